@@ -75,6 +75,7 @@ public class CyclopsCore extends ModBaseVersionable {
         commands.put(CommandIgnite.NAME, new CommandIgnite(this));
         commands.put(CommandDebug.NAME, new CommandDebug(this));
         commands.put(CommandReloadResources.NAME, new CommandReloadResources(this));
+        commands.put(CommandSleepingTiles.NAME, new CommandSleepingTiles(this));
         CommandMod command =  new CommandMod(this, commands);
         command.addAlias("cyclops");
         return command;
@@ -66,6 +66,36 @@ public class GeneralConfig extends DummyConfig {
     @ConfigurableProperty(category = ConfigurableTypeCategory.CORE, comment = "The minimum array size of potion types, increase to allow for more potion types.", minimalValue=256, maximalValue=2560, requiresMcRestart = true)
     public static int minimumPotionTypesArraySize = 256;
 
+    /**
+     * If tile entity updates should be collected per chunk and sent in batches.
+     */
+    @ConfigurableProperty(category = ConfigurableTypeCategory.CORE, comment = "If tile entity updates should be collected per chunk and sent in batches, instead of one vanilla update packet per tile.")
+    public static boolean tileUpdateBatching = false;
+
+    /**
+     * The maximum number of batched tile update packets that can be sent per tick.
+     */
+    @ConfigurableProperty(category = ConfigurableTypeCategory.CORE, comment = "The maximum number of batched tile update packets that can be sent per tick over all worlds, remaining updates are deferred to the next tick.", minimalValue = 1)
+    public static int tileUpdatePacketBudget = 256;
+
+    /**
+     * The maximum time in milliseconds that can be spent on retrogen per tick.
+     */
+    @ConfigurableProperty(category = ConfigurableTypeCategory.CORE, comment = "The maximum time in milliseconds that each mod can spend on retrogenerating queued chunks per tick, at least one chunk is always processed.", minimalValue = 0)
+    public static int retroGenTickBudget = 5;
+
+    /**
+     * The number of threads on which retrogen placements are planned.
+     */
+    @ConfigurableProperty(category = ConfigurableTypeCategory.CORE, comment = "The number of background threads on which retrogen ore placements are calculated, 0 calculates them on the server thread.", minimalValue = 0, maximalValue = 64, requiresMcRestart = true)
+    public static int retroGenPlanningThreads = 2;
+
+    /**
+     * The compression level of sharded world storages.
+     */
+    @ConfigurableProperty(category = ConfigurableTypeCategory.CORE, comment = "The deflate compression level (0-9) for sharded world storage data, lower values save faster but use more disk space.", minimalValue = 0, maximalValue = 9, requiresWorldRestart = true)
+    public static int worldStorageCompressionLevel = 6;
+
     /**
      * If a button should be added to the main menu to open a dev world (shift-click creates a new world).
      */
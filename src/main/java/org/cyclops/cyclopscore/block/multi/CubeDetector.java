@@ -5,20 +5,31 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import net.minecraft.block.Block;
 import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Blocks;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.Vec3i;
 import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
 import org.cyclops.cyclopscore.algorithm.Dimension;
 import org.cyclops.cyclopscore.helper.L10NHelpers;
 import org.cyclops.cyclopscore.helper.LocationHelpers;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 /**
  * Detector of cubes in a world.
+ *
+ * Structures that have been successfully validated are remembered per world.
+ * When a block of such a known structure is removed, the structure is invalidated directly
+ * without navigating to its borders and rescanning it.
+ * All other changes fall back to a full detection.
  * @author rubensworks
  *
  */
@@ -28,10 +39,15 @@ public class CubeDetector {
 	
 	private Collection<AllowedBlock> allowedBlocks = Sets.newHashSet();
 	private Map<Block, AllowedBlock> blockInfo = Maps.newHashMap();
+	private final Map<Block, Integer> blockIndexes = Maps.newIdentityHashMap();
+	private final List<AllowedBlock> indexedAllowedBlocks = Lists.newArrayList();
 	private List<? extends IDetectionListener> listeners;
 	private List<ISizeValidator> sizeValidators = Lists.newLinkedList();
 
-	private final Map<Block, Integer> blockOccurences = Maps.newHashMap();
+	private int[] blockOccurences = new int[0];
+	private Chunk cachedChunk = null;
+	// Shared by the client and server thread, the structures of each world are only accessed by the thread of that world.
+	private final Map<World, Map<Long, List<KnownStructure>>> knownStructures = Collections.synchronizedMap(new WeakHashMap<>());
 
 	/**
 	 * Make a new instance.
@@ -57,7 +73,15 @@ public class CubeDetector {
 		for(AllowedBlock block : allowedBlocks) {
 			blockInfo.put(block.getBlock(), block);
 			this.allowedBlocks.add(block);
+			Integer index = blockIndexes.get(block.getBlock());
+			if(index == null) {
+				blockIndexes.put(block.getBlock(), indexedAllowedBlocks.size());
+				indexedAllowedBlocks.add(block);
+			} else {
+				indexedAllowedBlocks.set(index, block);
+			}
 		}
+		blockOccurences = new int[indexedAllowedBlocks.size()];
 	}
 	
 	/**
@@ -85,17 +109,42 @@ public class CubeDetector {
 	}
 
 	protected void notifyListeners(World world, BlockPos location, Vec3i size, boolean valid, BlockPos originCorner) {
+		// Listeners may retain the location, while scans reuse a mutable location.
+		location = location.toImmutable();
 		for(IDetectionListener listener : getListeners()) {
 			listener.onDetect(world, location, size, valid, originCorner);
 		}
 	}
 	
+	/**
+	 * Get the block state at the given location.
+	 * The chunk of the previous lookup is reused while it is in the same world and still loaded,
+	 * which avoids the chunk lookup of {@link World#getBlockState(BlockPos)} for most blocks of a structure.
+	 * The cached chunk is only kept during a single detection.
+	 * @param world The world.
+	 * @param location The location.
+	 * @return The block state.
+	 */
+	protected IBlockState getBlockState(World world, BlockPos location) {
+		if(world.isOutsideBuildHeight(location)) {
+			return Blocks.AIR.getDefaultState();
+		}
+		int chunkX = location.getX() >> 4;
+		int chunkZ = location.getZ() >> 4;
+		Chunk chunk = cachedChunk;
+		if(chunk == null || chunk.getWorld() != world || chunk.x != chunkX || chunk.z != chunkZ || !chunk.isLoaded()) {
+			chunk = world.getChunkFromChunkCoords(chunkX, chunkZ);
+			cachedChunk = chunk;
+		}
+		return chunk.getBlockState(location);
+	}
+	
 	protected L10NHelpers.UnlocalizedString isValidLocation(World world, BlockPos location, IValidationAction action, BlockPos excludeLocation) {
-		IBlockState blockState = world.getBlockState(location);
+		IBlockState blockState = getBlockState(world, location);
 		Block block = blockState.getBlock();
 		boolean contains = location.equals(excludeLocation) || blockInfo.containsKey(block);
 		L10NHelpers.UnlocalizedString error;
-        if(action != null && blockInfo.containsKey(block) && (error = action.onValidate(location, blockState)) != null) {
+        if(action != null && blockInfo.containsKey(block) && (error = action.onValidate(location.toImmutable(), blockState)) != null) {
 			return error;
 		}
         return contains ? null : new L10NHelpers.UnlocalizedString("multiblock.cyclopscore.error.invalidBlock",
@@ -107,7 +156,8 @@ public class CubeDetector {
     }
 	
 	protected boolean isAir(World world, BlockPos location) {
-		return world.isAirBlock(location);
+		IBlockState blockState = getBlockState(world, location);
+		return blockState.getBlock().isAir(blockState, world, location);
 	}
 	
 	/**
@@ -166,12 +216,15 @@ public class CubeDetector {
 	}
 	
 	protected boolean isEdge(World world, int[][] dimensionEgdes, BlockPos location) {
-        int[] c = LocationHelpers.toArray(location);
-		for (int i = 0; i < dimensionEgdes.length; i++) {
-			for (int j = 0; j < dimensionEgdes[i].length; j++) {
-				if(dimensionEgdes[i][j] == c[i]) {
-					return true;
-				}
+		return isEdge(dimensionEgdes[0], location.getX())
+				|| isEdge(dimensionEgdes[1], location.getY())
+				|| isEdge(dimensionEgdes[2], location.getZ());
+	}
+
+	private static boolean isEdge(int[] dimensionEdges, int coordinate) {
+		for (int edge : dimensionEdges) {
+			if(edge == coordinate) {
+				return true;
 			}
 		}
 		return false;
@@ -182,7 +235,7 @@ public class CubeDetector {
 	 * we know which locations should be borders, and which ones should be air.
 	 * @param world The world.
 	 * @param dimensionEgdes The edges per dimension. [dimension][start=0 | stop=1]
-	 * @param location The location to check.
+	 * @param location The location to check, this instance may be reused after this call.
      * @param action The action to execute when a location has been validated.
      * @param excludeLocation The location of the block that is being removed, used for invalidating, null for validating.
 	 * @return If the location was valid.
@@ -200,7 +253,17 @@ public class CubeDetector {
 	 * @return If the structure is valid for the given edges.
 	 */
 	protected boolean coordinateRecursion(World world, int[][] dimensionEgdes, BlockPosAction locationAction) {
-		return coordinateRecursion(world, dimensionEgdes, new int[]{}, locationAction);
+		BlockPos.MutableBlockPos location = new BlockPos.MutableBlockPos();
+		for(int x = dimensionEgdes[0][0]; x <= dimensionEgdes[0][1]; x++) {
+			for(int y = dimensionEgdes[1][0]; y <= dimensionEgdes[1][1]; y++) {
+				for(int z = dimensionEgdes[2][0]; z <= dimensionEgdes[2][1]; z++) {
+					if(!locationAction.run(world, location.setPos(x, y, z))) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
 	}
 	
 	/**
@@ -212,7 +275,10 @@ public class CubeDetector {
 	 * @param accumulatedCoordinates The accumulated coordinates up until now.
 	 * @param locationAction The runnable that will be called for each location in the structure.
 	 * @return If the structure is valid for the given edges.
+	 * @deprecated Use {@link CubeDetector#coordinateRecursion(World, int[][], BlockPosAction)},
+	 *             which does not allocate coordinate arrays for each location.
 	 */
+	@Deprecated
 	protected boolean coordinateRecursion(World world, int[][] dimensionEgdes, int[] accumulatedCoordinates,
                                           BlockPosAction locationAction) {
 		if(accumulatedCoordinates.length == dimensionEgdes.length) { // Leaf of recursion
@@ -242,11 +308,11 @@ public class CubeDetector {
 	 * @return Null if the size is valid, otherwise the error message.
 	 */
 	protected L10NHelpers.UnlocalizedString validateAllowedBlockConditions(World world, BlockPos location) {
-		Block block = world.getBlockState(location).getBlock();
-		if(blockInfo.containsKey(block)) {
-			Integer occurences = blockOccurences.get(block);
-			if (occurences == null) occurences = 0;
-			AllowedBlock allowed = blockInfo.get(block);
+		Block block = getBlockState(world, location).getBlock();
+		Integer index = blockIndexes.get(block);
+		if(index != null) {
+			int occurences = blockOccurences[index];
+			AllowedBlock allowed = indexedAllowedBlocks.get(index);
 
 			for(IBlockCountValidator validator : allowed.getCountValidators()) {
 				L10NHelpers.UnlocalizedString error;
@@ -255,7 +321,7 @@ public class CubeDetector {
 				}
 			}
 			
-			blockOccurences.put(block, occurences + 1);
+			blockOccurences[index] = occurences + 1;
 		}
 		return null;
 	}
@@ -276,10 +342,7 @@ public class CubeDetector {
 	protected L10NHelpers.UnlocalizedString validateDimensionEdges(World world, final int[][] dimensionEgdes,
 			final boolean valid, final IValidationAction action, final BlockPos excludeLocation) {
 		// Init the blockState occurences counter on zero for all blocks.
-		blockOccurences.clear();
-		for(AllowedBlock block : allowedBlocks) {
-			blockOccurences.put(block.getBlock(), 0);
-		}
+		Arrays.fill(blockOccurences, 0);
 		
 		// Loop over all dimensions
 		final List<L10NHelpers.UnlocalizedString> errors = Lists.newLinkedList();
@@ -301,8 +364,9 @@ public class CubeDetector {
 		});
 
 		if(minimumValid) {
-			for(AllowedBlock allowed : allowedBlocks) {
-				int occurences = blockOccurences.get(allowed.getBlock());
+			for(int i = 0; i < indexedAllowedBlocks.size(); i++) {
+				AllowedBlock allowed = indexedAllowedBlocks.get(i);
+				int occurences = blockOccurences[i];
 				for(IBlockCountValidator validator : allowed.getCountValidators()) {
 					L10NHelpers.UnlocalizedString error;
 					if((error = validator.isValid(occurences, true, allowed.getBlock())) != null) {
@@ -355,6 +419,29 @@ public class CubeDetector {
 	 * size of 0 in each dimension.
 	 */
 	public DetectionResult detect(World world, BlockPos startLocation, BlockPos excludeLocation, IValidationAction action, boolean changeState) {
+		cachedChunk = null;
+		try {
+			return detectStructure(world, startLocation, excludeLocation, action, changeState);
+		} finally {
+			// Don't retain chunks of worlds that may be unloaded.
+			cachedChunk = null;
+		}
+	}
+
+	protected DetectionResult detectStructure(World world, BlockPos startLocation, BlockPos excludeLocation, IValidationAction action, boolean changeState) {
+		// Removing a block from a known structure always invalidates exactly that structure.
+		if(excludeLocation != null) {
+			KnownStructure knownStructure = getKnownStructure(world, excludeLocation);
+			if(knownStructure != null) {
+				if(changeState) {
+					removeKnownStructure(world, knownStructure);
+					postValidate(world, knownStructure.getSize(), knownStructure.getDimensionEdges(), false,
+							knownStructure.getOriginCorner(), excludeLocation);
+				}
+				return new DetectionResult(knownStructure.getSize());
+			}
+		}
+
 		// Next to the origin, we only need one corner for each dimension,
 		// we can easily derive if the structure is valid with these 4 corners.
 		L10NHelpers.UnlocalizedString error;
@@ -414,11 +501,139 @@ public class CubeDetector {
 				return new DetectionResult(error);
 			}
 		}
+        if(excludeLocation == null && changeState) {
+			addKnownStructure(world, new KnownStructure(originCorner, size, dimensionEgdes));
+		}
         if(changeState) {
 			postValidate(world, size, dimensionEgdes, excludeLocation == null, originCorner, excludeLocation);
         }
 		return new DetectionResult(size);
 	}
+
+	/**
+	 * Get the known valid structure that contains the given location.
+	 * @param world The world.
+	 * @param location A location.
+	 * @return The known structure or null.
+	 */
+	public KnownStructure getKnownStructure(World world, BlockPos location) {
+		Map<Long, List<KnownStructure>> worldStructures = knownStructures.get(world);
+		if(worldStructures != null) {
+			List<KnownStructure> structures = worldStructures.get(ChunkPos.asLong(location.getX() >> 4, location.getZ() >> 4));
+			if(structures != null) {
+				for(KnownStructure structure : structures) {
+					if(structure.contains(location.getX(), location.getY(), location.getZ())) {
+						return structure;
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	protected void addKnownStructure(World world, KnownStructure structure) {
+		Map<Long, List<KnownStructure>> worldStructures = knownStructures.get(world);
+		if(worldStructures == null) {
+			worldStructures = Maps.newHashMap();
+			knownStructures.put(world, worldStructures);
+		}
+		int[][] edges = structure.getDimensionEdges();
+
+		// A new structure replaces all known structures it overlaps with.
+		Set<KnownStructure> overlapping = Sets.newHashSet();
+		for(int chunkX = edges[0][0] >> 4; chunkX <= edges[0][1] >> 4; chunkX++) {
+			for(int chunkZ = edges[2][0] >> 4; chunkZ <= edges[2][1] >> 4; chunkZ++) {
+				List<KnownStructure> structures = worldStructures.get(ChunkPos.asLong(chunkX, chunkZ));
+				if(structures != null) {
+					for(KnownStructure other : structures) {
+						if(other.intersects(structure)) {
+							overlapping.add(other);
+						}
+					}
+				}
+			}
+		}
+		for(KnownStructure other : overlapping) {
+			removeKnownStructure(world, other);
+		}
+
+		for(int chunkX = edges[0][0] >> 4; chunkX <= edges[0][1] >> 4; chunkX++) {
+			for(int chunkZ = edges[2][0] >> 4; chunkZ <= edges[2][1] >> 4; chunkZ++) {
+				long key = ChunkPos.asLong(chunkX, chunkZ);
+				List<KnownStructure> structures = worldStructures.get(key);
+				if(structures == null) {
+					structures = Lists.newArrayListWithCapacity(1);
+					worldStructures.put(key, structures);
+				}
+				structures.add(structure);
+			}
+		}
+	}
+
+	protected void removeKnownStructure(World world, KnownStructure structure) {
+		Map<Long, List<KnownStructure>> worldStructures = knownStructures.get(world);
+		if(worldStructures != null) {
+			int[][] edges = structure.getDimensionEdges();
+			for(int chunkX = edges[0][0] >> 4; chunkX <= edges[0][1] >> 4; chunkX++) {
+				for(int chunkZ = edges[2][0] >> 4; chunkZ <= edges[2][1] >> 4; chunkZ++) {
+					long key = ChunkPos.asLong(chunkX, chunkZ);
+					List<KnownStructure> structures = worldStructures.get(key);
+					if(structures != null) {
+						structures.remove(structure);
+						if(structures.isEmpty()) {
+							worldStructures.remove(key);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * A structure that was found to be valid.
+	 */
+	public static class KnownStructure {
+
+		private final BlockPos originCorner;
+		private final Vec3i size;
+		private final int[][] dimensionEdges;
+
+		public KnownStructure(BlockPos originCorner, Vec3i size, int[][] dimensionEdges) {
+			this.originCorner = originCorner;
+			this.size = size;
+			this.dimensionEdges = dimensionEdges;
+		}
+
+		public BlockPos getOriginCorner() {
+			return originCorner;
+		}
+
+		public Vec3i getSize() {
+			return size;
+		}
+
+		/**
+		 * @return The edges per dimension. [dimension][start=0 | stop=1]
+		 */
+		public int[][] getDimensionEdges() {
+			return dimensionEdges;
+		}
+
+		public boolean contains(int x, int y, int z) {
+			return x >= dimensionEdges[0][0] && x <= dimensionEdges[0][1]
+					&& y >= dimensionEdges[1][0] && y <= dimensionEdges[1][1]
+					&& z >= dimensionEdges[2][0] && z <= dimensionEdges[2][1];
+		}
+
+		public boolean intersects(KnownStructure other) {
+			for(int i = 0; i < dimensionEdges.length; i++) {
+				if(dimensionEdges[i][1] < other.dimensionEdges[i][0] || dimensionEdges[i][0] > other.dimensionEdges[i][1]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
 	
 	/**
 	 * Listener for detections.
@@ -444,7 +659,8 @@ public class CubeDetector {
 		/**
 		 * An action for {@link CubeDetector#coordinateRecursion(World, int[][], BlockPosAction)}.
 		 * @param world The world.
-		 * @param location The location.
+		 * @param location The location, this instance is reused for the next location,
+		 *                 so use {@link BlockPos#toImmutable()} if it must be retained.
 		 * @return If the recursion should continue. If one is false, the full
 		 * {@link CubeDetector#coordinateRecursion(World, int[][], BlockPosAction)} will return false.
 		 */
@@ -8,13 +8,17 @@ import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.text.TextComponentString;
+import net.minecraft.world.WorldServer;
 import org.cyclops.cyclopscore.CyclopsCore;
+import org.cyclops.cyclopscore.helper.L10NHelpers;
 import org.cyclops.cyclopscore.init.ModBase;
 import org.cyclops.cyclopscore.network.PacketCodec;
 import org.cyclops.cyclopscore.network.packet.debug.PingPongPacketAsync;
 import org.cyclops.cyclopscore.network.packet.debug.PingPongPacketComplexAsync;
 import org.cyclops.cyclopscore.network.packet.debug.PingPongPacketComplexSync;
 import org.cyclops.cyclopscore.network.packet.debug.PingPongPacketSync;
+import org.cyclops.cyclopscore.tileentity.CyclopsTileEntity;
+import org.cyclops.cyclopscore.tileentity.TileUpdateScheduler;
 
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -58,6 +62,7 @@ public class CommandDebug extends CommandMod {
         map.put("simple_sync", new CommandDebugPacket(getMod(), new PingPongPacketSync(AMOUNT)));
         map.put("complex_async", new CommandDebugPacket(getMod(), new PingPongPacketComplexAsync(AMOUNT, "abc", "def")));
         map.put("complex_sync", new CommandDebugPacket(getMod(), new PingPongPacketComplexSync(AMOUNT, "abc", "def")));
+        map.put("tile_updates", new CommandDebugTileUpdates(getMod()));
         return map;
     }
 
@@ -91,4 +96,35 @@ public class CommandDebug extends CommandMod {
         }
     }
 
+    public class CommandDebugTileUpdates extends CommandMod {
+
+        public CommandDebugTileUpdates(ModBase mod) {
+            super(mod);
+        }
+
+        @Override
+        public List<String> getTabCompletions(MinecraftServer server, ICommandSender sender, String[] parts, BlockPos blockPos) {
+            return null;
+        }
+
+        @Override
+        public void execute(MinecraftServer server, ICommandSender sender, String[] parts) {
+            if (!(sender.getEntityWorld() instanceof WorldServer)) {
+                return;
+            }
+            TileUpdateScheduler scheduler = TileUpdateScheduler.getInstance((WorldServer) sender.getEntityWorld());
+            sender.sendMessage(new TextComponentString(L10NHelpers.localize("chat.cyclopscore.command.tileupdates",
+                    scheduler.getQueuedChunks())));
+            sendCounters(sender, "Total", scheduler.getCounters());
+            for (Map.Entry<Class<? extends CyclopsTileEntity>, TileUpdateScheduler.Counters> entry : scheduler.getTypeCounters().entrySet()) {
+                sendCounters(sender, entry.getKey().getSimpleName(), entry.getValue());
+            }
+        }
+
+        protected void sendCounters(ICommandSender sender, String name, TileUpdateScheduler.Counters counters) {
+            sender.sendMessage(new TextComponentString(String.format(" %s: queued %s, sent %s, deferred %s, untracked %s",
+                    name, counters.getQueued(), counters.getSent(), counters.getDeferred(), counters.getUntracked())));
+        }
+    }
+
 }
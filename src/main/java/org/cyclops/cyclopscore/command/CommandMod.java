@@ -12,6 +12,7 @@ import net.minecraft.util.text.TextComponentString;
 import net.minecraftforge.fml.common.FMLCommonHandler;
 import org.cyclops.cyclopscore.helper.L10NHelpers;
 import org.cyclops.cyclopscore.init.ModBase;
+import org.cyclops.cyclopscore.world.gen.IRetroGenRegistry;
 
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -34,6 +35,9 @@ public class CommandMod implements ICommand {
         this.subCommands = subCommands;
         this.subCommands.put(CommandConfig.NAME, new CommandConfig(mod));
         this.subCommands.put(CommandVersion.NAME, new CommandVersion(mod));
+        if (mod.getRegistryManager().getRegistry(IRetroGenRegistry.class) != null) {
+            this.subCommands.put(CommandRetroGen.NAME, new CommandRetroGen(mod));
+        }
         addAlias(mod.getModId());
     }
 
@@ -0,0 +1,37 @@
+package org.cyclops.cyclopscore.command;
+
+import net.minecraft.command.ICommandSender;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.text.TextComponentString;
+import org.cyclops.cyclopscore.helper.L10NHelpers;
+import org.cyclops.cyclopscore.init.ModBase;
+import org.cyclops.cyclopscore.world.gen.IRetroGenRegistry;
+
+import java.util.List;
+
+/**
+ * Command for showing the retrogen progress.
+ * @author rubensworks
+ *
+ */
+public class CommandRetroGen extends CommandMod {
+
+    public static final String NAME = "retrogen";
+
+    public CommandRetroGen(ModBase mod) {
+        super(mod, NAME);
+    }
+
+    @Override
+    public List<String> getTabCompletions(MinecraftServer server, ICommandSender sender, String[] parts, BlockPos blockPos) {
+        return null;
+    }
+
+    @Override
+    public void execute(MinecraftServer server, ICommandSender sender, String[] parts) {
+        IRetroGenRegistry registry = getMod().getRegistryManager().getRegistry(IRetroGenRegistry.class);
+        sender.sendMessage(new TextComponentString(L10NHelpers.localize("chat.cyclopscore.command.retrogen",
+                registry.getPendingChunkCount(), String.format("%.1f", registry.getProcessedChunksPerSecond()))));
+    }
+}
@@ -0,0 +1,49 @@
+package org.cyclops.cyclopscore.command;
+
+import com.google.common.collect.Maps;
+import net.minecraft.command.ICommandSender;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.text.TextComponentString;
+import org.cyclops.cyclopscore.helper.L10NHelpers;
+import org.cyclops.cyclopscore.init.ModBase;
+import org.cyclops.cyclopscore.tileentity.CyclopsTileEntity;
+import org.cyclops.cyclopscore.tileentity.TileSleepScheduler;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command for showing the sleeping tiles in the world of the sender.
+ * @author rubensworks
+ *
+ */
+public class CommandSleepingTiles extends CommandMod {
+
+    public static final String NAME = "sleepingtiles";
+
+    public CommandSleepingTiles(ModBase mod) {
+        super(mod, NAME);
+    }
+
+    @Override
+    public List<String> getTabCompletions(MinecraftServer server, ICommandSender sender, String[] parts, BlockPos blockPos) {
+        return null;
+    }
+
+    @Override
+    public void execute(MinecraftServer server, ICommandSender sender, String[] parts) {
+        TileSleepScheduler scheduler = TileSleepScheduler.getInstance(sender.getEntityWorld());
+        Map<String, Integer> typeCounts = Maps.newTreeMap();
+        for (CyclopsTileEntity tile : scheduler.getSleepingTiles()) {
+            String type = tile.getClass().getSimpleName();
+            Integer count = typeCounts.get(type);
+            typeCounts.put(type, count == null ? 1 : count + 1);
+        }
+        sender.sendMessage(new TextComponentString(L10NHelpers.localize("chat.cyclopscore.command.sleepingtiles",
+                scheduler.getSleepingTiles().size(), scheduler.getScheduledWakeUps())));
+        for (Map.Entry<String, Integer> entry : typeCounts.entrySet()) {
+            sender.sendMessage(new TextComponentString(" " + entry.getKey() + ": " + entry.getValue()));
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.cyclops.cyclopscore.config.configurable;
 
 import lombok.experimental.Delegate;
+import net.minecraft.block.Block;
 import net.minecraft.block.BlockContainer;
 import net.minecraft.block.SoundType;
 import net.minecraft.block.material.Material;
@@ -223,6 +224,25 @@ public class ConfigurableBlockContainer extends BlockContainer implements IConfi
         onPostBlockDestroyed(world, blockPos);
     }
     
+    @SuppressWarnings("deprecation")
+    @Override
+    public void neighborChanged(IBlockState state, World world, BlockPos pos, Block neighborBlock, BlockPos fromPos) {
+        super.neighborChanged(state, world, pos, neighborBlock, fromPos);
+        TileEntity tile = world.getTileEntity(pos);
+        if(tile instanceof CyclopsTileEntity) {
+            ((CyclopsTileEntity) tile).onNeighborChanged();
+        }
+    }
+
+    @Override
+    public void onNeighborChange(IBlockAccess world, BlockPos pos, BlockPos neighbor) {
+        super.onNeighborChange(world, pos, neighbor);
+        TileEntity tile = world.getTileEntity(pos);
+        if(tile instanceof CyclopsTileEntity) {
+            ((CyclopsTileEntity) tile).onNeighborChanged();
+        }
+    }
+
     @Override
     public void onBlockPlacedBy(World world, BlockPos blockPos, IBlockState blockState, EntityLivingBase entity, ItemStack stack) {
         if(entity != null) {
@@ -233,6 +253,8 @@ public class ConfigurableBlockContainer extends BlockContainer implements IConfi
                 stack.getTagCompound().setInteger("y", blockPos.getY());
                 stack.getTagCompound().setInteger("z", blockPos.getZ());
                 tile.readFromNBT(stack.getTagCompound());
+                // Placed tiles always start awake
+                tile.wakeUp();
             }
 
             if(tile instanceof CyclopsTileEntity.ITickingTile) {
@@ -0,0 +1,183 @@
+package org.cyclops.cyclopscore.datastructure;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A timing wheel that spreads entries evenly over the ticks of a fixed interval.
+ *
+ * Each entry is assigned to one slot of the wheel, and is due once every interval ticks, in the tick of its slot.
+ * An entry prefers the slot that is determined by its hash, but is moved to the next least loaded slot
+ * if that slot has more than the tolerated amount of entries above the least loaded slot,
+ * so that the load per tick stays flat.
+ *
+ * Slot assignment only depends on the hashes and the registration order of the entries.
+ * Registration order is not stable across restarts (it follows chunk loading order),
+ * so entries that were moved away from their preferred slot may end up in a different slot after a restart.
+ * Only entries that are registered while their preferred slot is overloaded are moved,
+ * so a larger tolerance keeps more entries in their stable hash slot, at the cost of a less flat load.
+ * @param <T> The type of entries.
+ * @author rubensworks
+ */
+public class TickWheel<T> {
+
+    /**
+     * The default amount of entries by which a slot may exceed the least loaded slot
+     * before new entries are moved away from it.
+     */
+    public static final int DEFAULT_TOLERANCE = 2;
+
+    private final int interval;
+    private final int tolerance;
+    private final List<Set<T>> slots;
+    private final Map<T, Integer> entrySlots = Maps.newHashMap();
+
+    public TickWheel(int interval) {
+        this(interval, DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * @param interval The number of ticks between two consecutive ticks in which an entry is due.
+     * @param tolerance The amount of entries by which the preferred slot of an entry may exceed
+     *                  the least loaded slot before the entry is moved to another slot.
+     */
+    public TickWheel(int interval, int tolerance) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("The interval of a tick wheel must be positive, got " + interval);
+        }
+        if (tolerance < 0) {
+            throw new IllegalArgumentException("The tolerance of a tick wheel can not be negative, got " + tolerance);
+        }
+        this.interval = interval;
+        this.tolerance = tolerance;
+        this.slots = Lists.newArrayListWithCapacity(interval);
+        for (int i = 0; i < interval; i++) {
+            this.slots.add(Sets.newLinkedHashSet());
+        }
+    }
+
+    /**
+     * @param pos A position.
+     * @return A well-distributed hash for the given position.
+     */
+    public static int hash(BlockPos pos) {
+        long hash = pos.toLong() * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * @return The number of ticks between two consecutive ticks in which an entry is due.
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return The amount of entries by which a preferred slot may exceed the least loaded slot.
+     */
+    public int getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * @return The number of entries in this wheel.
+     */
+    public int size() {
+        return entrySlots.size();
+    }
+
+    /**
+     * Add an entry to this wheel.
+     * Nothing happens if the entry was already added.
+     * @param entry The entry.
+     * @param hash The hash of the entry, this determines its preferred slot.
+     * @return The slot of the entry.
+     */
+    public int register(T entry, int hash) {
+        Integer existingSlot = entrySlots.get(entry);
+        if (existingSlot != null) {
+            return existingSlot;
+        }
+        int minLoad = Integer.MAX_VALUE;
+        for (Set<T> slot : slots) {
+            minLoad = Math.min(minLoad, slot.size());
+        }
+        int slot = Math.floorMod(hash, interval);
+        if (slots.get(slot).size() > minLoad + tolerance) {
+            while (slots.get(slot).size() > minLoad) {
+                slot = (slot + 1) % interval;
+            }
+        }
+        slots.get(slot).add(entry);
+        entrySlots.put(entry, slot);
+        return slot;
+    }
+
+    /**
+     * Remove an entry from this wheel.
+     * @param entry The entry.
+     * @return If the entry was present.
+     */
+    public boolean unregister(T entry) {
+        Integer slot = entrySlots.remove(entry);
+        if (slot == null) {
+            return false;
+        }
+        slots.get(slot).remove(entry);
+        return true;
+    }
+
+    /**
+     * @param tick A tick, such as the world time.
+     * @return The slot that is due in the given tick.
+     */
+    public int getSlot(long tick) {
+        return (int) Math.floorMod(tick, (long) interval);
+    }
+
+    /**
+     * @param entry An entry.
+     * @param tick A tick, such as the world time.
+     * @return If the entry is present and due in the given tick.
+     */
+    public boolean isDue(T entry, long tick) {
+        Integer slot = entrySlots.get(entry);
+        return slot != null && slot == getSlot(tick);
+    }
+
+    /**
+     * @param tick A tick, such as the world time.
+     * @return The entries that are due in the given tick, in registration order.
+     */
+    public Collection<T> getDue(long tick) {
+        return Collections.unmodifiableSet(slots.get(getSlot(tick)));
+    }
+
+    /**
+     * @param slot A slot.
+     * @return The number of entries in the given slot.
+     */
+    public int getLoad(int slot) {
+        return slots.get(slot).size();
+    }
+
+    /**
+     * @return The number of entries in each slot.
+     */
+    public int[] getLoads() {
+        int[] loads = new int[interval];
+        for (int i = 0; i < interval; i++) {
+            loads[i] = slots.get(i).size();
+        }
+        return loads;
+    }
+
+}
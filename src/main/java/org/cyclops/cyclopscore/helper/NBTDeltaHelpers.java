@@ -0,0 +1,147 @@
+package org.cyclops.cyclopscore.helper;
+
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.nbt.NBTTagString;
+
+/**
+ * Helper methods for calculating and applying differences between NBT tags.
+ *
+ * A delta is a compound tag that can contain the following keys:
+ * <ul>
+ *     <li>"set": A compound with all keys that have been added or replaced.</li>
+ *     <li>"del": A list of strings with all keys that have been removed.</li>
+ *     <li>"sub": A compound of nested deltas for compound values that have changed.</li>
+ *     <li>"lst": A compound of list deltas for list values that have changed,
+ *     each containing the new list length "len" and a list "set" of changed elements "v" at index "i".</li>
+ * </ul>
+ * Applying a delta to a tag that is already equal to the delta's target has no effect.
+ * @author rubensworks
+ */
+public final class NBTDeltaHelpers {
+
+    private static final String KEY_SET = "set";
+    private static final String KEY_DELETE = "del";
+    private static final String KEY_SUB = "sub";
+    private static final String KEY_LIST = "lst";
+    private static final String KEY_LENGTH = "len";
+    private static final String KEY_INDEX = "i";
+    private static final String KEY_VALUE = "v";
+
+    /**
+     * Calculate the delta that transforms the given previous tag into the current tag.
+     * The returned delta can refer to sub-tags of the current tag, it does not copy them.
+     * @param previous The previous tag.
+     * @param current The current tag.
+     * @return The delta, or null if both tags are equal.
+     */
+    public static NBTTagCompound createDelta(NBTTagCompound previous, NBTTagCompound current) {
+        NBTTagCompound set = new NBTTagCompound();
+        NBTTagCompound sub = new NBTTagCompound();
+        NBTTagCompound lists = new NBTTagCompound();
+        NBTTagList removed = new NBTTagList();
+
+        for (String key : current.getKeySet()) {
+            NBTBase currentValue = current.getTag(key);
+            NBTBase previousValue = previous.getTag(key);
+            if (previousValue == null || previousValue.getId() != currentValue.getId()) {
+                set.setTag(key, currentValue);
+            } else if (!previousValue.equals(currentValue)) {
+                if (currentValue instanceof NBTTagCompound) {
+                    sub.setTag(key, createDelta((NBTTagCompound) previousValue, (NBTTagCompound) currentValue));
+                } else if (currentValue instanceof NBTTagList
+                        && ((NBTTagList) previousValue).getTagType() == ((NBTTagList) currentValue).getTagType()) {
+                    lists.setTag(key, createListDelta((NBTTagList) previousValue, (NBTTagList) currentValue));
+                } else {
+                    set.setTag(key, currentValue);
+                }
+            }
+        }
+        for (String key : previous.getKeySet()) {
+            if (!current.hasKey(key)) {
+                removed.appendTag(new NBTTagString(key));
+            }
+        }
+
+        NBTTagCompound delta = new NBTTagCompound();
+        if (!set.hasNoTags()) {
+            delta.setTag(KEY_SET, set);
+        }
+        if (!sub.hasNoTags()) {
+            delta.setTag(KEY_SUB, sub);
+        }
+        if (!lists.hasNoTags()) {
+            delta.setTag(KEY_LIST, lists);
+        }
+        if (!removed.hasNoTags()) {
+            delta.setTag(KEY_DELETE, removed);
+        }
+        return delta.hasNoTags() ? null : delta;
+    }
+
+    private static NBTTagCompound createListDelta(NBTTagList previous, NBTTagList current) {
+        NBTTagList set = new NBTTagList();
+        for (int i = 0; i < current.tagCount(); i++) {
+            NBTBase currentValue = current.get(i);
+            if (i >= previous.tagCount() || !previous.get(i).equals(currentValue)) {
+                NBTTagCompound element = new NBTTagCompound();
+                element.setInteger(KEY_INDEX, i);
+                element.setTag(KEY_VALUE, currentValue);
+                set.appendTag(element);
+            }
+        }
+        NBTTagCompound delta = new NBTTagCompound();
+        delta.setInteger(KEY_LENGTH, current.tagCount());
+        delta.setTag(KEY_SET, set);
+        return delta;
+    }
+
+    /**
+     * Apply the given delta to the given tag.
+     * @param target The tag to modify.
+     * @param delta A delta created by {@link NBTDeltaHelpers#createDelta(NBTTagCompound, NBTTagCompound)}.
+     */
+    public static void applyDelta(NBTTagCompound target, NBTTagCompound delta) {
+        NBTTagCompound set = delta.getCompoundTag(KEY_SET);
+        for (String key : set.getKeySet()) {
+            target.setTag(key, set.getTag(key));
+        }
+        NBTTagCompound sub = delta.getCompoundTag(KEY_SUB);
+        for (String key : sub.getKeySet()) {
+            NBTTagCompound subTarget = target.getCompoundTag(key);
+            applyDelta(subTarget, sub.getCompoundTag(key));
+            target.setTag(key, subTarget);
+        }
+        NBTTagCompound lists = delta.getCompoundTag(KEY_LIST);
+        for (String key : lists.getKeySet()) {
+            NBTBase listTarget = target.getTag(key);
+            NBTTagList list = listTarget instanceof NBTTagList ? (NBTTagList) listTarget : new NBTTagList();
+            applyListDelta(list, lists.getCompoundTag(key));
+            target.setTag(key, list);
+        }
+        NBTTagList removed = delta.getTagList(KEY_DELETE, MinecraftHelpers.NBTTag_Types.NBTTagString.ordinal());
+        for (int i = 0; i < removed.tagCount(); i++) {
+            target.removeTag(removed.getStringTagAt(i));
+        }
+    }
+
+    private static void applyListDelta(NBTTagList target, NBTTagCompound delta) {
+        int length = delta.getInteger(KEY_LENGTH);
+        while (target.tagCount() > length) {
+            target.removeTag(target.tagCount() - 1);
+        }
+        NBTTagList set = delta.getTagList(KEY_SET, MinecraftHelpers.NBTTag_Types.NBTTagCompound.ordinal());
+        for (int i = 0; i < set.tagCount(); i++) {
+            NBTTagCompound element = set.getCompoundTagAt(i);
+            int index = element.getInteger(KEY_INDEX);
+            NBTBase value = element.getTag(KEY_VALUE);
+            if (index < target.tagCount()) {
+                target.set(index, value);
+            } else {
+                target.appendTag(value);
+            }
+        }
+    }
+
+}
@@ -1,13 +1,17 @@
 package org.cyclops.cyclopscore.helper;
 
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Blocks;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 import net.minecraft.world.biome.Biome;
 import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 import org.apache.logging.log4j.Level;
 import org.cyclops.cyclopscore.CyclopsCore;
 
 import javax.annotation.Nullable;
+import java.util.Arrays;
 
 /**
  * Helpers for world related logic.
@@ -54,7 +58,10 @@ public class WorldHelpers {
 	 * @param baseModulus The amount of ticks that could be skipped.
 	 * @param params Optional parameters to further vary the tick occurences.
 	 * @return If a tick of some operation can occur.
+	 * @deprecated Use {@link org.cyclops.cyclopscore.tileentity.CyclopsTileEntity#isWorkTick(int)},
+	 *             which spreads tiles evenly over the ticks instead of drawing from the shared world random.
 	 */
+	@Deprecated
 	public static boolean efficientTick(World world, int baseModulus, int... params) {
 		int mod = (int) (baseModulus * TICK_LAG_REDUCTION_MODULUS_MODIFIER);
 		if(mod == 0) mod = 1;
@@ -70,7 +77,9 @@ public class WorldHelpers {
      * @param baseModulus The amount of ticks that could be skipped.
      * @param blockPos The position to use as param.
      * @return If a tick of some operation can occur.
+     * @deprecated Use {@link org.cyclops.cyclopscore.tileentity.CyclopsTileEntity#isWorkTick(int)}.
      */
+    @Deprecated
     public static boolean efficientTick(World world, int baseModulus, BlockPos blockPos) {
         return efficientTick(world, baseModulus, blockPos.getX(), blockPos.getY(), blockPos.getZ());
     }
@@ -86,6 +95,66 @@ public class WorldHelpers {
 		return new BlockPos(x & (CHUNK_SIZE - 1), y, z & (CHUNK_SIZE - 1));
 	}
 
+    /**
+     * Get the Y coordinate of the highest non-air block in a column of a chunk.
+     * The heightmap of the chunk is used as lower bound, so only the non-opaque blocks above it are checked,
+     * and sections that only contain air are skipped.
+     * @param chunk The chunk.
+     * @param x The X coordinate within the chunk.
+     * @param z The Z coordinate within the chunk.
+     * @param maxY The highest Y coordinate to consider.
+     * @return The Y coordinate of the highest non-air block, or -1 if the column only contains air.
+     */
+    public static int getTopBlockY(Chunk chunk, int x, int z, int maxY) {
+        int heightY = chunk.getHeightValue(x, z) - 1;
+        int minY = heightY <= maxY ? heightY : -1;
+        ExtendedBlockStorage[] storages = chunk.getBlockStorageArray();
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        for(int y = Math.min(maxY, storages.length * 16 - 1); y > minY; y--) {
+            ExtendedBlockStorage storage = storages[y >> 4];
+            if(storage == Chunk.NULL_BLOCK_STORAGE || storage.isEmpty()) {
+                // Continue at the top of the section below
+                y &= ~15;
+            } else {
+                IBlockState blockState = storage.get(x, y & 15, z);
+                pos.setPos((chunk.x << 4) + x, y, (chunk.z << 4) + z);
+                if(!blockState.getBlock().isAir(blockState, chunk.getWorld(), pos)) {
+                    return y;
+                }
+            }
+        }
+        return minY;
+    }
+
+    /**
+     * Get the sections that only contain air in all loaded chunks that overlap with the given area.
+     * Chunks that are not loaded are considered to have no empty sections.
+     * @param world The world.
+     * @param minX The minimal X coordinate.
+     * @param minZ The minimal Z coordinate.
+     * @param maxX The maximal X coordinate (inclusive).
+     * @param maxZ The maximal Z coordinate (inclusive).
+     * @return A bitmask in which bit i is set if section i (Y coordinates i * 16 to i * 16 + 15) only contains air.
+     */
+    public static int getEmptySections(World world, int minX, int minZ, int maxX, int maxZ) {
+        int emptySections = 0xFFFF;
+        for(int chunkX = minX >> 4; chunkX <= maxX >> 4 && emptySections != 0; chunkX++) {
+            for(int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4 && emptySections != 0; chunkZ++) {
+                Chunk chunk = world.getChunkProvider().getLoadedChunk(chunkX, chunkZ);
+                if(chunk == null) {
+                    return 0;
+                }
+                ExtendedBlockStorage[] storages = chunk.getBlockStorageArray();
+                for(int i = 0; i < storages.length && i < 16; i++) {
+                    if(storages[i] != Chunk.NULL_BLOCK_STORAGE && !storages[i].isEmpty()) {
+                        emptySections &= ~(1 << i);
+                    }
+                }
+            }
+        }
+        return emptySections;
+    }
+
     /**
      * Loop over a 3D area while accumulating a value.
      * @param world The world.
@@ -125,6 +194,183 @@ public class WorldHelpers {
         return foldArea(world, new int[]{area, area, area}, new int[]{area, area, area}, blockPos, folder, value);
     }
 
+    /**
+     * Loop over all blocks in a 3D area.
+     * The area is iterated chunk by chunk and section by section, without creating a position for each block.
+     * Positions outside of the world height are skipped.
+     * @param world The world.
+     * @param min The minimal position.
+     * @param max The maximal position (inclusive).
+     * @param consumer The consumer, the given position is reused and may not be stored.
+     */
+    public static void forEachInArea(World world, BlockPos min, BlockPos max, BlockStateConsumer consumer) {
+        findInArea(world, min, max, (blockState, pos) -> {
+            consumer.accept(blockState, pos);
+            return false;
+        });
+    }
+
+    /**
+     * Loop over all blocks in a 3D area.
+     * @param world The world.
+     * @param area Radius.
+     * @param blockPos The center position.
+     * @param consumer The consumer, the given position is reused and may not be stored.
+     * @see #forEachInArea(World, BlockPos, BlockPos, BlockStateConsumer)
+     */
+    public static void forEachInArea(World world, int area, BlockPos blockPos, BlockStateConsumer consumer) {
+        forEachInArea(world, blockPos.add(-area, -area, -area), blockPos.add(area, area, area), consumer);
+    }
+
+    /**
+     * Find the first block in a 3D area that matches the given predicate.
+     * The area is iterated chunk by chunk and section by section, without creating a position for each block,
+     * and the iteration stops as soon as the predicate matches.
+     * Positions outside of the world height are skipped.
+     * @param world The world.
+     * @param min The minimal position.
+     * @param max The maximal position (inclusive).
+     * @param predicate The predicate, the given position is reused and may not be stored.
+     * @return The position of the first matching block, or null if no block matched.
+     */
+    @Nullable
+    public static BlockPos findInArea(World world, BlockPos min, BlockPos max, BlockStatePredicate predicate) {
+        IBlockState air = Blocks.AIR.getDefaultState();
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        int minY = Math.max(0, min.getY());
+        int maxY = Math.min(world.getHeight() - 1, max.getY());
+        for(int chunkX = min.getX() >> 4; chunkX <= max.getX() >> 4; chunkX++) {
+            int minX = Math.max(min.getX(), chunkX << 4);
+            int maxX = Math.min(max.getX(), (chunkX << 4) + 15);
+            for(int chunkZ = min.getZ() >> 4; chunkZ <= max.getZ() >> 4; chunkZ++) {
+                int minZ = Math.max(min.getZ(), chunkZ << 4);
+                int maxZ = Math.min(max.getZ(), (chunkZ << 4) + 15);
+                ExtendedBlockStorage[] storages = world.getChunkFromChunkCoords(chunkX, chunkZ).getBlockStorageArray();
+                for(int sectionY = minY >> 4; sectionY <= maxY >> 4; sectionY++) {
+                    ExtendedBlockStorage storage = storages[sectionY];
+                    int sectionMaxY = Math.min(maxY, (sectionY << 4) + 15);
+                    for(int x = minX; x <= maxX; x++) {
+                        for(int y = Math.max(minY, sectionY << 4); y <= sectionMaxY; y++) {
+                            for(int z = minZ; z <= maxZ; z++) {
+                                IBlockState blockState = storage == Chunk.NULL_BLOCK_STORAGE
+                                        ? air : storage.get(x & 15, y & 15, z & 15);
+                                if(predicate.test(blockState, pos.setPos(x, y, z))) {
+                                    return pos.toImmutable();
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Capture the block states in a 3D area, so that they can be read without accessing the world.
+     * This can be used to run expensive operations on an area off the server thread.
+     * Positions outside of the world height are captured as air.
+     * @param world The world.
+     * @param min The minimal position.
+     * @param max The maximal position (inclusive).
+     * @return The snapshot.
+     */
+    public static AreaSnapshot snapshotArea(World world, BlockPos min, BlockPos max) {
+        AreaSnapshot snapshot = new AreaSnapshot(min, max);
+        forEachInArea(world, min, max, snapshot::setBlockState);
+        return snapshot;
+    }
+
+    public static interface BlockStateConsumer {
+
+        public void accept(IBlockState blockState, BlockPos pos);
+
+    }
+
+    public static interface BlockStatePredicate {
+
+        public boolean test(IBlockState blockState, BlockPos pos);
+
+    }
+
+    public static interface SnapshotFoldingFunction<T> {
+
+        @Nullable
+        public T apply(@Nullable T from, IBlockState blockState, BlockPos pos);
+
+    }
+
+    /**
+     * A read-only copy of the block states in an area.
+     * Once created, this can safely be read from any thread.
+     */
+    public static class AreaSnapshot {
+
+        private final BlockPos min;
+        private final BlockPos max;
+        private final int sizeY;
+        private final int sizeZ;
+        private final IBlockState[] blockStates;
+
+        protected AreaSnapshot(BlockPos min, BlockPos max) {
+            this.min = min.toImmutable();
+            this.max = max.toImmutable();
+            this.sizeY = max.getY() - min.getY() + 1;
+            this.sizeZ = max.getZ() - min.getZ() + 1;
+            this.blockStates = new IBlockState[(max.getX() - min.getX() + 1) * sizeY * sizeZ];
+            Arrays.fill(this.blockStates, Blocks.AIR.getDefaultState());
+        }
+
+        public BlockPos getMin() {
+            return min;
+        }
+
+        public BlockPos getMax() {
+            return max;
+        }
+
+        protected int getIndex(int x, int y, int z) {
+            return ((x - min.getX()) * sizeY + (y - min.getY())) * sizeZ + (z - min.getZ());
+        }
+
+        protected void setBlockState(IBlockState blockState, BlockPos pos) {
+            blockStates[getIndex(pos.getX(), pos.getY(), pos.getZ())] = blockState;
+        }
+
+        /**
+         * @param pos A position.
+         * @return The captured block state at the given position, or air if it is outside of this area.
+         */
+        public IBlockState getBlockState(BlockPos pos) {
+            if(pos.getX() < min.getX() || pos.getY() < min.getY() || pos.getZ() < min.getZ()
+                    || pos.getX() > max.getX() || pos.getY() > max.getY() || pos.getZ() > max.getZ()) {
+                return Blocks.AIR.getDefaultState();
+            }
+            return blockStates[getIndex(pos.getX(), pos.getY(), pos.getZ())];
+        }
+
+        /**
+         * Loop over all captured blocks while accumulating a value.
+         * @param folder The folding function, the given position is reused and may not be stored.
+         * @param value The start value.
+         * @param <T> The type of value to accumulate.
+         * @return The resulting value.
+         */
+        public <T> T fold(SnapshotFoldingFunction<T> folder, T value) {
+            BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+            int i = 0;
+            for(int x = min.getX(); x <= max.getX(); x++) {
+                for(int y = min.getY(); y <= max.getY(); y++) {
+                    for(int z = min.getZ(); z <= max.getZ(); z++) {
+                        value = folder.apply(value, blockStates[i++], pos.setPos(x, y, z));
+                    }
+                }
+            }
+            return value;
+        }
+
+    }
+
     public static interface WorldFoldingFunction<F, T> {
 
         @Nullable
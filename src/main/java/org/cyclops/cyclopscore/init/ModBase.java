@@ -6,6 +6,7 @@ import com.google.common.collect.Sets;
 import lombok.Data;
 import net.minecraft.command.ICommand;
 import net.minecraft.creativetab.CreativeTabs;
+import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.fml.common.Loader;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.common.ModContainer;
@@ -367,6 +368,7 @@ public abstract class ModBase {
      */
     public void registerWorldStorage(WorldStorage worldStorage) {
         worldStorages.add(worldStorage);
+        MinecraftForge.EVENT_BUS.register(worldStorage);
     }
 
     /**
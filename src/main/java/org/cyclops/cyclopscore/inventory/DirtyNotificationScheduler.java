@@ -0,0 +1,59 @@
+package org.cyclops.cyclopscore.inventory;
+
+import com.google.common.collect.Lists;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
+
+import java.util.List;
+
+/**
+ * Sends the coalesced dirty notifications of {@link SimpleInventory} instances at the end of each server tick.
+ * @see SimpleInventory#setCoalesceDirtyNotifications(boolean)
+ * @author rubensworks
+ */
+public class DirtyNotificationScheduler {
+
+    private static List<SimpleInventory> pending = Lists.newArrayList();
+    private static List<SimpleInventory> flushing = Lists.newArrayList();
+
+    /**
+     * Schedule a notification for the given inventory.
+     * An inventory should only be scheduled once until it has been flushed.
+     * @param inventory The inventory.
+     */
+    protected static synchronized void schedule(SimpleInventory inventory) {
+        pending.add(inventory);
+    }
+
+    /**
+     * Notify the listeners of all scheduled inventories.
+     */
+    public static void flush() {
+        List<SimpleInventory> inventories;
+        synchronized (DirtyNotificationScheduler.class) {
+            inventories = pending;
+            pending = flushing;
+            flushing = inventories;
+        }
+        // Inventories that change during notification are scheduled again for the next flush.
+        for (SimpleInventory inventory : inventories) {
+            inventory.flushDirtyNotifications();
+        }
+        inventories.clear();
+    }
+
+    /**
+     * Event listener that flushes the scheduled notifications at the end of each server tick.
+     */
+    public static class EventListener {
+
+        @SubscribeEvent
+        public void onServerTick(TickEvent.ServerTickEvent event) {
+            if (event.phase == TickEvent.Phase.END) {
+                flush();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,23 @@
+package org.cyclops.cyclopscore.inventory;
+
+import org.cyclops.cyclopscore.persist.IDirtyMarkListener;
+
+import java.util.BitSet;
+
+/**
+ * A dirty mark listener for a {@link SimpleInventory} that is informed of the changed slots
+ * when the inventory coalesces its dirty notifications.
+ * @see SimpleInventory#setCoalesceDirtyNotifications(boolean)
+ * @author rubensworks
+ */
+public interface IDirtySlotsListener extends IDirtyMarkListener {
+
+    /**
+     * Called at most once per tick when the inventory coalesces its dirty notifications.
+     * When notifications are not coalesced, {@link #onDirty()} is called instead.
+     * @param changedSlots The indices of all slots that changed since the previous notification.
+     *                     This is reused afterwards, so it must not be modified or stored.
+     */
+    public void onDirtySlots(BitSet changedSlots);
+
+}
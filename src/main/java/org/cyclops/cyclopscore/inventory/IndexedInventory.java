@@ -1,22 +1,39 @@
 package org.cyclops.cyclopscore.inventory;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import gnu.trove.map.TIntObjectMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NBTTagCompound;
+import org.cyclops.commoncapabilities.api.capability.itemhandler.ItemMatch;
 
+import java.util.BitSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * An inventory that adds an index from item to slot on a regular inventory.
+ * The occupied slots are tracked in a bitset, so that empty and non-empty slots can be found with word scans.
+ * A second index groups slots by item variant (item, metadata and NBT tag),
+ * and keeps the total quantity of each variant up to date.
+ * Stacks that are modified in place are only picked up again when {@link #resyncVariants()} is called.
  * @author rubensworks
  *
  */
 public class IndexedInventory extends LargeInventory implements IndexedSlotlessItemHandlerWrapper.IInventoryIndexReference {
 
     private final Map<Item, TIntObjectMap<ItemStack>> index = Maps.newIdentityHashMap();
+    private final BitSet occupiedSlots;
+    private final Map<ItemVariant, ItemVariant> variants = Maps.newHashMap();
+    private final Map<Item, List<ItemVariant>> itemVariants = Maps.newIdentityHashMap();
+    private final ItemVariant variantProbe = new ItemVariant();
+    private final ItemVariant[] slotVariants;
+    private final int[] slotCounts;
     private int firstEmptySlot;
     private int lastEmptySlot;
     private int firstNonEmptySlot;
@@ -37,6 +54,9 @@ public class IndexedInventory extends LargeInventory implements IndexedSlotlessI
      */
     public IndexedInventory(int size, String name, int stackLimit) {
         super(size, name, stackLimit);
+        this.occupiedSlots = new BitSet(size);
+        this.slotVariants = new ItemVariant[size];
+        this.slotCounts = new int[size];
         this.firstEmptySlot = 0;
         this.lastEmptySlot = size - 1;
         this.firstNonEmptySlot = -1;
@@ -45,6 +65,13 @@ public class IndexedInventory extends LargeInventory implements IndexedSlotlessI
 
     protected void createIndex() {
         index.clear();
+        occupiedSlots.clear();
+        variants.clear();
+        itemVariants.clear();
+        for (int i = 0; i < slotVariants.length; i++) {
+            slotVariants[i] = null;
+            slotCounts[i] = 0;
+        }
         firstEmptySlot = -1;
         lastEmptySlot = -1;
         firstNonEmptySlot = -1;
@@ -58,6 +85,8 @@ public class IndexedInventory extends LargeInventory implements IndexedSlotlessI
                     index.put(itemStack.getItem(), stacks);
                 }
                 stacks.put(i, itemStack);
+                addToVariant(i, itemStack);
+                occupiedSlots.set(i);
                 if (firstNonEmptySlot < 0) {
                     firstNonEmptySlot = i;
                 }
@@ -79,15 +108,18 @@ public class IndexedInventory extends LargeInventory implements IndexedSlotlessI
 
     @Override
     public void setInventorySlotContents(int slotId, ItemStack itemStack) {
+        // Clamp first, so that the variant counts match the stored stack
+        limitStackSize(itemStack);
+
         // Update index
         ItemStack oldStack = getStackInSlot(slotId);
         if (!oldStack.isEmpty()) {
             TIntObjectMap<ItemStack> stacks = index.get(oldStack.getItem());
             if (stacks != null) {
                 stacks.remove(slotId);
-            }
-            if (stacks.isEmpty()) {
-                index.remove(oldStack.getItem());
+                if (stacks.isEmpty()) {
+                    index.remove(oldStack.getItem());
+                }
             }
         }
         if (!itemStack.isEmpty()) {
@@ -98,80 +130,192 @@ public class IndexedInventory extends LargeInventory implements IndexedSlotlessI
             }
             stacks.put(slotId, itemStack);
         }
+        removeFromVariant(slotId);
+        if (!itemStack.isEmpty()) {
+            addToVariant(slotId, itemStack);
+        }
 
         // Call super
         super.setInventorySlotContents(slotId, itemStack);
 
         // Update first and last values
-        if (slotId == firstEmptySlot && oldStack.isEmpty() && !itemStack.isEmpty()) {
-            // Search forwards
-            int oldFirstEmptySlot = firstEmptySlot;
-            firstEmptySlot = -1;
-            for (int i = Math.max(0, oldFirstEmptySlot); i < getSizeInventory(); i++) {
-                if (getStackInSlot(i).isEmpty()) {
-                    firstEmptySlot = i;
-                    break;
-                }
+        if (oldStack.isEmpty() && !itemStack.isEmpty()) {
+            occupiedSlots.set(slotId);
+            if (slotId == firstEmptySlot) {
+                firstEmptySlot = getNextEmptySlot(slotId);
+            }
+            if (slotId == lastEmptySlot) {
+                lastEmptySlot = occupiedSlots.previousClearBit(slotId);
+            }
+            if (slotId < firstNonEmptySlot || firstNonEmptySlot < 0) {
+                firstNonEmptySlot = slotId;
+            }
+            if (slotId > lastNonEmptySlot) {
+                lastNonEmptySlot = slotId;
+            }
+        } else if (!oldStack.isEmpty() && itemStack.isEmpty()) {
+            occupiedSlots.clear(slotId);
+            if (slotId == firstNonEmptySlot) {
+                firstNonEmptySlot = getNextNonEmptySlot(slotId);
+            }
+            if (slotId == lastNonEmptySlot) {
+                lastNonEmptySlot = occupiedSlots.previousSetBit(slotId);
+            }
+            if (slotId < firstEmptySlot || firstEmptySlot < 0) {
+                firstEmptySlot = slotId;
+            }
+            if (slotId > lastEmptySlot) {
+                lastEmptySlot = slotId;
             }
         }
-        if (slotId == lastEmptySlot && oldStack.isEmpty() && !itemStack.isEmpty()) {
-            // Search backwards
-            int oldLastEmptySlot = lastEmptySlot;
-            lastEmptySlot = -1;
-            for (int i = oldLastEmptySlot; i >= 0; i--) {
-                if (getStackInSlot(i).isEmpty()) {
-                    lastEmptySlot = i;
-                    break;
-                }
+
+        // This is unit-tested, so this *should not* be able to happen.
+        // If it happens, trigger a crash!
+        if (firstEmptySlot == firstNonEmptySlot) throw new IllegalStateException(String.format(
+                "Indexed inventory at inconsistent with first empty %s and first non-empty %s.", firstEmptySlot, firstNonEmptySlot));
+        if (lastEmptySlot == lastNonEmptySlot) throw new IllegalStateException(String.format(
+                "Indexed inventory at inconsistent with last empty %s and last non-empty %s.", lastEmptySlot, lastNonEmptySlot));
+    }
+
+    /**
+     * Update the variants and their counts for stacks that were modified in place.
+     * This must be called explicitly after such modifications, as it checks all occupied slots.
+     * Changes through {@link #setInventorySlotContents(int, ItemStack)} and {@link #decrStackSize(int, int)}
+     * are applied to the index directly.
+     * If stacks were emptied or changed to another item in place, the full index is recreated.
+     */
+    public void resyncVariants() {
+        for (int i = occupiedSlots.nextSetBit(0); i >= 0; i = occupiedSlots.nextSetBit(i + 1)) {
+            ItemStack itemStack = getStackInSlot(i);
+            ItemVariant variant = slotVariants[i];
+            if (itemStack.isEmpty() || variant == null || variant.item != itemStack.getItem()) {
+                createIndex();
+                return;
+            }
+            if (variant.meta != itemStack.getMetadata() || !Objects.equals(variant.tag, itemStack.getTagCompound())) {
+                removeFromVariant(i);
+                addToVariant(i, itemStack);
+            } else if (slotCounts[i] != itemStack.getCount()) {
+                variant.count += itemStack.getCount() - slotCounts[i];
+                slotCounts[i] = itemStack.getCount();
             }
         }
-        if (slotId == firstNonEmptySlot && !oldStack.isEmpty() && itemStack.isEmpty()) {
-            // Search forwards
-            int oldFirstNonEmptySlot = firstNonEmptySlot;
-            firstNonEmptySlot = -1;
-            for (int i = Math.max(0, oldFirstNonEmptySlot); i < getSizeInventory(); i++) {
-                if (!getStackInSlot(i).isEmpty()) {
-                    firstNonEmptySlot = i;
-                    break;
-                }
+    }
+
+    protected void addToVariant(int slotId, ItemStack itemStack) {
+        ItemVariant variant = findVariant(itemStack);
+        if (variant == null) {
+            // Copy the tag, so that later modifications of the stack can not corrupt the index.
+            NBTTagCompound tag = itemStack.getTagCompound();
+            variant = new ItemVariant(itemStack.getItem(), itemStack.getMetadata(), tag == null ? null : tag.copy());
+            variants.put(variant, variant);
+            List<ItemVariant> list = itemVariants.get(variant.item);
+            if (list == null) {
+                list = Lists.newArrayList();
+                itemVariants.put(variant.item, list);
             }
+            list.add(variant);
         }
-        if (slotId == lastNonEmptySlot && !oldStack.isEmpty() && itemStack.isEmpty()) {
-            // Search backwards
-            int oldLastNonEmptySlot = lastNonEmptySlot;
-            lastNonEmptySlot = -1;
-            for (int i = oldLastNonEmptySlot; i >= 0; i--) {
-                if (!getStackInSlot(i).isEmpty()) {
-                    lastNonEmptySlot = i;
-                    break;
+        variant.slots.add(slotId);
+        variant.count += itemStack.getCount();
+        slotVariants[slotId] = variant;
+        slotCounts[slotId] = itemStack.getCount();
+    }
+
+    protected void removeFromVariant(int slotId) {
+        ItemVariant variant = slotVariants[slotId];
+        if (variant != null) {
+            variant.slots.remove(slotId);
+            variant.count -= slotCounts[slotId];
+            if (variant.slots.isEmpty()) {
+                variants.remove(variant);
+                List<ItemVariant> list = itemVariants.get(variant.item);
+                list.remove(variant);
+                if (list.isEmpty()) {
+                    itemVariants.remove(variant.item);
                 }
             }
+            slotVariants[slotId] = null;
+            slotCounts[slotId] = 0;
         }
-        if ((slotId < firstEmptySlot || firstEmptySlot < 0) && itemStack.isEmpty()) {
-            firstEmptySlot = slotId;
+    }
+
+    /**
+     * Get the total quantity of all items in this inventory that match the given stack.
+     * Item, damage and NBT matching are taken into account, stack size matching is ignored.
+     * When item, damage and NBT must match, this is a single lookup,
+     * otherwise all variants of the item (or all variants if the item does not matter) are checked.
+     * @param itemStack The prototype stack.
+     * @param matchFlags The flags from {@link ItemMatch}.
+     * @return The total quantity.
+     */
+    public long getCount(ItemStack itemStack, int matchFlags) {
+        if (itemStack.isEmpty()) {
+            return 0;
         }
-        if (slotId > lastEmptySlot && itemStack.isEmpty()) {
-            lastEmptySlot = slotId;
+        if ((matchFlags & ItemMatch.ITEM) != 0) {
+            if ((matchFlags & ItemMatch.DAMAGE) != 0 && (matchFlags & ItemMatch.NBT) != 0) {
+                ItemVariant variant = getVariant(itemStack);
+                return variant == null ? 0 : variant.count;
+            }
+            return getCount(itemVariants.get(itemStack.getItem()), itemStack, matchFlags);
         }
-        if ((slotId < firstNonEmptySlot || firstNonEmptySlot < 0) && !itemStack.isEmpty())  {
-            firstNonEmptySlot = slotId;
+        return getCount(variants.keySet(), itemStack, matchFlags);
+    }
+
+    protected long getCount(Iterable<ItemVariant> candidates, ItemStack itemStack, int matchFlags) {
+        long count = 0;
+        if (candidates != null) {
+            for (ItemVariant variant : candidates) {
+                if (variant.matches(itemStack, matchFlags)) {
+                    count += variant.count;
+                }
+            }
         }
-        if (slotId > lastNonEmptySlot && !itemStack.isEmpty())  {
-            lastNonEmptySlot = slotId;
+        return count;
+    }
+
+    /**
+     * Get the variant of the given stack.
+     * @param itemStack A stack.
+     * @return The variant with the same item, metadata and NBT tag, or null if it is not present in this inventory.
+     */
+    public ItemVariant getVariant(ItemStack itemStack) {
+        if (itemStack.isEmpty()) {
+            return null;
         }
+        return findVariant(itemStack);
+    }
 
-        // This is unit-tested, so this *should not* be able to happen.
-        // If it happens, trigger a crash!
-        if (firstEmptySlot == firstNonEmptySlot) throw new IllegalStateException(String.format(
-                "Indexed inventory at inconsistent with first empty %s and first non-empty %s.", firstEmptySlot, firstNonEmptySlot));
-        if (lastEmptySlot == lastNonEmptySlot) throw new IllegalStateException(String.format(
-                "Indexed inventory at inconsistent with last empty %s and last non-empty %s.", lastEmptySlot, lastNonEmptySlot));
+    /**
+     * Look up the variant of the given stack with a reused probe, so that lookups do not allocate.
+     * @param itemStack A non-empty stack.
+     * @return The variant, or null.
+     */
+    protected ItemVariant findVariant(ItemStack itemStack) {
+        ItemVariant variant = variants.get(variantProbe.set(itemStack.getItem(), itemStack.getMetadata(), itemStack.getTagCompound()));
+        // Don't keep a reference to the stack's tag
+        variantProbe.set(null, 0, null);
+        return variant;
+    }
+
+    @Override
+    public TIntSet getVariantSlots(ItemStack itemStack) {
+        ItemVariant variant = getVariant(itemStack);
+        return variant == null ? null : variant.slots;
+    }
+
+    /**
+     * @return All item variants in this inventory.
+     */
+    public Iterable<ItemVariant> getVariants() {
+        return variants.keySet();
     }
 
     @Override
     public void clear() {
         super.clear();
-        index.clear();
+        createIndex();
     }
 
     @Override
@@ -198,4 +342,110 @@ public class IndexedInventory extends LargeInventory implements IndexedSlotlessI
     public int getLastNonEmptySlot() {
         return lastNonEmptySlot;
     }
-}
\ No newline at end of file
+
+    @Override
+    public int getNextEmptySlot(int fromSlot) {
+        int slot = occupiedSlots.nextClearBit(fromSlot);
+        return slot < getSizeInventory() ? slot : -1;
+    }
+
+    @Override
+    public int getNextNonEmptySlot(int fromSlot) {
+        return occupiedSlots.nextSetBit(fromSlot);
+    }
+
+    /**
+     * A unique combination of item, metadata and NBT tag in an {@link IndexedInventory},
+     * with the slots it is stored in and its total quantity.
+     */
+    public static final class ItemVariant {
+
+        private Item item;
+        private int meta;
+        private NBTTagCompound tag;
+        private int hash;
+        private final TIntSet slots;
+        private long count = 0;
+
+        private ItemVariant(Item item, int meta, NBTTagCompound tag) {
+            this.slots = new TIntHashSet();
+            set(item, meta, tag);
+        }
+
+        /**
+         * Create a probe for looking up variants, it has no slots.
+         */
+        private ItemVariant() {
+            this.slots = null;
+        }
+
+        /**
+         * Change the key of this variant, only allowed for probes and during construction.
+         * The hash of the tag is calculated once here.
+         */
+        private ItemVariant set(Item item, int meta, NBTTagCompound tag) {
+            this.item = item;
+            this.meta = meta;
+            this.tag = tag;
+            this.hash = 31 * (31 * System.identityHashCode(item) + meta) + (tag == null ? 0 : tag.hashCode());
+            return this;
+        }
+
+        public Item getItem() {
+            return item;
+        }
+
+        public int getMeta() {
+            return meta;
+        }
+
+        /**
+         * @return The slots of this variant, this must not be modified.
+         */
+        public TIntSet getSlots() {
+            return slots;
+        }
+
+        /**
+         * @return The total quantity of this variant.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Check if this variant matches the given stack.
+         * @param itemStack A stack.
+         * @param matchFlags The flags from {@link ItemMatch}, stack size matching is ignored.
+         * @return If it matches.
+         */
+        public boolean matches(ItemStack itemStack, int matchFlags) {
+            return ((matchFlags & ItemMatch.ITEM) == 0 || item == itemStack.getItem())
+                    && ((matchFlags & ItemMatch.DAMAGE) == 0 || meta == itemStack.getMetadata())
+                    && ((matchFlags & ItemMatch.NBT) == 0 || Objects.equals(tag, itemStack.getTagCompound()));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ItemVariant)) {
+                return false;
+            }
+            ItemVariant that = (ItemVariant) obj;
+            return this.hash == that.hash && this.item == that.item && this.meta == that.meta
+                    && Objects.equals(this.tag, that.tag);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ItemVariant{item=%s, meta=%s, tag=%s, count=%s}", item, meta, tag, count);
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package org.cyclops.cyclopscore.inventory;
 
+import gnu.trove.iterator.TIntIterator;
 import gnu.trove.iterator.TIntObjectIterator;
 import gnu.trove.map.TIntObjectMap;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraftforge.items.IItemHandler;
@@ -10,6 +13,8 @@ import org.cyclops.commoncapabilities.api.capability.itemhandler.SlotlessItemHan
 
 import javax.annotation.Nonnull;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
 
 /**
  * A {@link org.cyclops.commoncapabilities.api.capability.itemhandler.ISlotlessItemHandler}
@@ -36,6 +41,21 @@ public class IndexedSlotlessItemHandlerWrapper extends SlotlessItemHandlerWrappe
 
     @Override
     protected int getNonFullSlotWithItemStack(@Nonnull ItemStack itemStack, int matchFlags) {
+        if (isVariantMatch(matchFlags)) {
+            TIntSet slots = inventory.getVariantSlots(itemStack);
+            if (slots != null) {
+                TIntObjectMap<ItemStack> stacks = inventory.getIndex().get(itemStack.getItem());
+                for (TIntIterator it = slots.iterator(); it.hasNext(); ) {
+                    int slot = it.next();
+                    ItemStack slotStack = stacks.get(slot);
+                    if (slotStack.getCount() < Math.min(inventory.getInventoryStackLimit(), slotStack.getMaxStackSize())
+                            && ItemMatch.areItemStacksEqual(slotStack, itemStack, matchFlags)) {
+                        return slot;
+                    }
+                }
+            }
+            return -1;
+        }
         Map<Item, TIntObjectMap<ItemStack>> items = inventory.getIndex();
         TIntObjectMap<ItemStack> stacks = items.get(itemStack.getItem());
         if (stacks != null) {
@@ -52,6 +72,19 @@ public class IndexedSlotlessItemHandlerWrapper extends SlotlessItemHandlerWrappe
 
     @Override
     protected int getNonEmptySlotWithItemStack(@Nonnull ItemStack itemStack, int matchFlags) {
+        if (isVariantMatch(matchFlags)) {
+            TIntSet slots = inventory.getVariantSlots(itemStack);
+            if (slots != null) {
+                TIntObjectMap<ItemStack> stacks = inventory.getIndex().get(itemStack.getItem());
+                for (TIntIterator it = slots.iterator(); it.hasNext(); ) {
+                    int slot = it.next();
+                    if (ItemMatch.areItemStacksEqual(stacks.get(slot), itemStack, matchFlags)) {
+                        return slot;
+                    }
+                }
+            }
+            return -1;
+        }
         Map<Item, TIntObjectMap<ItemStack>> items = inventory.getIndex();
         TIntObjectMap<ItemStack> stacks = items.get(itemStack.getItem());
         if (stacks != null) {
@@ -65,6 +98,11 @@ public class IndexedSlotlessItemHandlerWrapper extends SlotlessItemHandlerWrappe
         return -1;
     }
 
+    protected static boolean isVariantMatch(int matchFlags) {
+        int variantFlags = ItemMatch.ITEM | ItemMatch.DAMAGE | ItemMatch.NBT;
+        return (matchFlags & variantFlags) == variantFlags;
+    }
+
     @Override
     protected int getEmptySlot() {
         return inputStrategy == MovementStrategy.FIRST ? inventory.getFirstEmptySlot() : inventory.getLastEmptySlot();
@@ -75,6 +113,30 @@ public class IndexedSlotlessItemHandlerWrapper extends SlotlessItemHandlerWrappe
         return outputStrategy == MovementStrategy.FIRST ? inventory.getFirstNonEmptySlot() : inventory.getLastNonEmptySlot();
     }
 
+    /**
+     * @return An iterator over all empty slots in ascending order.
+     */
+    public PrimitiveIterator.OfInt getEmptySlots() {
+        return new SlotIterator(inventory.getFirstEmptySlot()) {
+            @Override
+            protected int getNextSlot(int fromSlot) {
+                return inventory.getNextEmptySlot(fromSlot);
+            }
+        };
+    }
+
+    /**
+     * @return An iterator over all non-empty slots in ascending order.
+     */
+    public PrimitiveIterator.OfInt getNonEmptySlots() {
+        return new SlotIterator(inventory.getFirstNonEmptySlot()) {
+            @Override
+            protected int getNextSlot(int fromSlot) {
+                return inventory.getNextNonEmptySlot(fromSlot);
+            }
+        };
+    }
+
     public MovementStrategy getInputStrategy() {
         return inputStrategy;
     }
@@ -105,14 +167,93 @@ public class IndexedSlotlessItemHandlerWrapper extends SlotlessItemHandlerWrappe
         LAST
     }
 
+    private static abstract class SlotIterator implements PrimitiveIterator.OfInt {
+
+        private int nextSlot;
+
+        public SlotIterator(int firstSlot) {
+            this.nextSlot = firstSlot;
+        }
+
+        protected abstract int getNextSlot(int fromSlot);
+
+        @Override
+        public boolean hasNext() {
+            return nextSlot >= 0;
+        }
+
+        @Override
+        public int nextInt() {
+            if (nextSlot < 0) {
+                throw new NoSuchElementException();
+            }
+            int slot = nextSlot;
+            nextSlot = getNextSlot(slot + 1);
+            return slot;
+        }
+    }
+
     public static interface IInventoryIndexReference {
 
         public int getInventoryStackLimit();
         public Map<Item, TIntObjectMap<ItemStack>> getIndex();
+        /**
+         * By default, the index entries of the stack's item are scanned.
+         * @param itemStack A stack.
+         * @return The slots that contain stacks with the same item, metadata and NBT tag, or null.
+         */
+        public default TIntSet getVariantSlots(ItemStack itemStack) {
+            TIntObjectMap<ItemStack> stacks = getIndex().get(itemStack.getItem());
+            if (stacks == null) {
+                return null;
+            }
+            TIntSet slots = new TIntHashSet();
+            for (TIntObjectIterator<ItemStack> it = stacks.iterator(); it.hasNext();) {
+                it.advance();
+                if (ItemMatch.areItemStacksEqual(it.value(), itemStack, ItemMatch.DAMAGE | ItemMatch.NBT)) {
+                    slots.add(it.key());
+                }
+            }
+            return slots.isEmpty() ? null : slots;
+        }
         public int getFirstEmptySlot();
         public int getLastEmptySlot();
         public int getFirstNonEmptySlot();
         public int getLastNonEmptySlot();
+        /**
+         * By default, all slots up to the last empty slot are checked against the index.
+         * @param fromSlot The slot to start searching from, inclusive.
+         * @return The first empty slot starting from the given slot, or -1 if there is none.
+         */
+        public default int getNextEmptySlot(int fromSlot) {
+            TIntSet occupiedSlots = new TIntHashSet();
+            for (TIntObjectMap<ItemStack> stacks : getIndex().values()) {
+                occupiedSlots.addAll(stacks.keySet());
+            }
+            for (int slot = Math.max(fromSlot, getFirstEmptySlot()); slot >= 0 && slot <= getLastEmptySlot(); slot++) {
+                if (!occupiedSlots.contains(slot)) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+        /**
+         * By default, all slots in the index are scanned.
+         * @param fromSlot The slot to start searching from, inclusive.
+         * @return The first non-empty slot starting from the given slot, or -1 if there is none.
+         */
+        public default int getNextNonEmptySlot(int fromSlot) {
+            int nextSlot = -1;
+            for (TIntObjectMap<ItemStack> stacks : getIndex().values()) {
+                for (TIntIterator it = stacks.keySet().iterator(); it.hasNext();) {
+                    int slot = it.next();
+                    if (slot >= fromSlot && (nextSlot < 0 || slot < nextSlot)) {
+                        nextSlot = slot;
+                    }
+                }
+            }
+            return nextSlot;
+        }
 
     }
 }
@@ -54,23 +54,12 @@ public class LargeInventory extends SimpleInventory {
         }
     }
 
-    /**
-     * Write inventory data to the given NBT.
-     * @param data The NBT tag that will receive inventory data.
-     * @param tag The NBT tag name where the info must be located.
-     */
-    public void writeToNBT(NBTTagCompound data, String tag) {
-        NBTTagList slots = new NBTTagList();
-        for (int index = 0; index < getSizeInventory(); ++index) {
-            ItemStack itemStack = getStackInSlot(index);
-            if (!itemStack.isEmpty() && itemStack.getCount() > 0) {
-                NBTTagCompound slot = new NBTTagCompound();
-                slots.appendTag(slot);
-                slot.setInteger("Slot", index);
-                itemStack.writeToNBT(slot);
-            }
-        }
-        data.setTag(tag, slots);
+    @Override
+    protected NBTTagCompound createSlotTag(int index, ItemStack itemStack) {
+        NBTTagCompound slot = new NBTTagCompound();
+        slot.setInteger("Slot", index);
+        itemStack.writeToNBT(slot);
+        return slot;
     }
 
 }
\ No newline at end of file
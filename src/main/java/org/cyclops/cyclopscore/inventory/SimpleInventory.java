@@ -1,6 +1,6 @@
 package org.cyclops.cyclopscore.inventory;
 
-import com.google.common.collect.Lists;
+import org.apache.commons.lang3.ArrayUtils;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NBTTagCompound;
@@ -10,7 +10,7 @@ import net.minecraft.util.text.TextComponentTranslation;
 import org.cyclops.cyclopscore.helper.MinecraftHelpers;
 import org.cyclops.cyclopscore.persist.IDirtyMarkListener;
 
-import java.util.List;
+import java.util.BitSet;
 import java.util.Objects;
 
 /**
@@ -24,7 +24,12 @@ public class SimpleInventory implements INBTInventory {
     // TODO: remove name parameter in 1.13 (make sure NBT serialization happens in a tag dedicated to this inventory)
     private final String _name;
     private final int _stackLimit;
-    private final List<IDirtyMarkListener> dirtyMarkListeners = Lists.newLinkedList();
+    private volatile IDirtyMarkListener[] dirtyMarkListeners = new IDirtyMarkListener[0];
+    private int changingSlot = -1;
+    private boolean coalesceDirtyNotifications = false;
+    private BitSet dirtySlots = new BitSet();
+    private BitSet notifyingDirtySlots = new BitSet();
+    private boolean dirtyNotificationPending = false;
 
     /**
      * Default constructor for NBT persistence, don't call this yourself.
@@ -53,7 +58,7 @@ public class SimpleInventory implements INBTInventory {
      * @param dirtyMarkListener The dirty mark listener.
      */
     public synchronized void addDirtyMarkListener(IDirtyMarkListener dirtyMarkListener) {
-        this.dirtyMarkListeners.add(dirtyMarkListener);
+        this.dirtyMarkListeners = ArrayUtils.add(this.dirtyMarkListeners, dirtyMarkListener);
     }
 
     /**
@@ -61,7 +66,22 @@ public class SimpleInventory implements INBTInventory {
      * @param dirtyMarkListener The dirty mark listener.
      */
     public synchronized void removeDirtyMarkListener(IDirtyMarkListener dirtyMarkListener) {
-        this.dirtyMarkListeners.remove(dirtyMarkListener);
+        this.dirtyMarkListeners = ArrayUtils.removeElement(this.dirtyMarkListeners, dirtyMarkListener);
+    }
+
+    /**
+     * If dirty notifications should be coalesced.
+     * If enabled, listeners are notified at most once per server tick,
+     * and {@link IDirtySlotsListener}s receive all slots that were changed since the previous notification.
+     * This should only be enabled for server-side inventories.
+     * @param coalesceDirtyNotifications If notifications should be coalesced.
+     */
+    public void setCoalesceDirtyNotifications(boolean coalesceDirtyNotifications) {
+        this.coalesceDirtyNotifications = coalesceDirtyNotifications;
+    }
+
+    public boolean isCoalesceDirtyNotifications() {
+        return coalesceDirtyNotifications;
     }
 
     @Override
@@ -85,7 +105,6 @@ public class SimpleInventory implements INBTInventory {
                 return result;
             }
             setInventorySlotContents(slotId, ItemStack.EMPTY);
-            onInventoryChanged();
             return stack;
         }
         return ItemStack.EMPTY;
@@ -96,12 +115,26 @@ public class SimpleInventory implements INBTInventory {
         if (slotId >= getSizeInventory()) {
             return;
         }
-        this._contents[slotId] = Objects.requireNonNull(itemstack);
+        this._contents[slotId] = limitStackSize(Objects.requireNonNull(itemstack));
+        // Only this slot has changed, so only this slot has to be marked as dirty.
+        changingSlot = slotId;
+        try {
+            onInventoryChanged();
+        } finally {
+            changingSlot = -1;
+        }
+    }
 
+    /**
+     * Reduce the size of the given stack to the stack limit of this inventory.
+     * @param itemstack A stack that will be placed in this inventory.
+     * @return The same stack.
+     */
+    protected ItemStack limitStackSize(ItemStack itemstack) {
         if (!itemstack.isEmpty() && itemstack.getCount() > this.getInventoryStackLimit()) {
             itemstack.setCount(this.getInventoryStackLimit());
         }
-        onInventoryChanged();
+        return itemstack;
     }
 
     @Override
@@ -170,18 +203,28 @@ public class SimpleInventory implements INBTInventory {
      */
     public void writeToNBT(NBTTagCompound data, String tag) {
         NBTTagList slots = new NBTTagList();
-        for (byte index = 0; index < getSizeInventory(); ++index) {
+        for (int index = 0; index < getSizeInventory(); ++index) {
             ItemStack itemStack = getStackInSlot(index);
             if (!itemStack.isEmpty() && itemStack.getCount() > 0) {
-                NBTTagCompound slot = new NBTTagCompound();
-                slots.appendTag(slot);
-                slot.setByte("Slot", index);
-                itemStack.writeToNBT(slot);
+                slots.appendTag(createSlotTag(index, itemStack));
             }
         }
         data.setTag(tag, slots);
     }
 
+    /**
+     * Serialize the given slot.
+     * @param index The slot index.
+     * @param itemStack The non-empty stack in the slot.
+     * @return The slot tag.
+     */
+    protected NBTTagCompound createSlotTag(int index, ItemStack itemStack) {
+        NBTTagCompound slot = new NBTTagCompound();
+        slot.setByte("Slot", (byte) index);
+        itemStack.writeToNBT(slot);
+        return slot;
+    }
+
     @Override
     public ItemStack removeStackFromSlot(int slotId) {
         ItemStack stackToTake = getStackInSlot(slotId);
@@ -230,14 +273,47 @@ public class SimpleInventory implements INBTInventory {
 
     @Override
 	public void markDirty() {
-        List<IDirtyMarkListener> dirtyMarkListeners;
+        if (coalesceDirtyNotifications) {
+            synchronized (this) {
+                if (changingSlot < 0) {
+                    dirtySlots.set(0, getSizeInventory());
+                } else {
+                    dirtySlots.set(changingSlot);
+                }
+                if (!dirtyNotificationPending) {
+                    dirtyNotificationPending = true;
+                    DirtyNotificationScheduler.schedule(this);
+                }
+            }
+        } else {
+            for (IDirtyMarkListener dirtyMarkListener : this.dirtyMarkListeners) {
+                dirtyMarkListener.onDirty();
+            }
+        }
+	}
+
+    /**
+     * Notify all listeners of the coalesced dirty markings.
+     * This is called by the {@link DirtyNotificationScheduler}.
+     */
+    protected void flushDirtyNotifications() {
+        BitSet changedSlots;
         synchronized (this) {
-            dirtyMarkListeners = Lists.newLinkedList(this.dirtyMarkListeners);
+            // Swap the buffers, so that changes during notification are collected for the next flush.
+            changedSlots = this.dirtySlots;
+            this.dirtySlots = this.notifyingDirtySlots;
+            this.notifyingDirtySlots = changedSlots;
+            this.dirtyNotificationPending = false;
         }
-		for(IDirtyMarkListener dirtyMarkListener : dirtyMarkListeners) {
-            dirtyMarkListener.onDirty();
+        for (IDirtyMarkListener dirtyMarkListener : this.dirtyMarkListeners) {
+            if (dirtyMarkListener instanceof IDirtySlotsListener) {
+                ((IDirtySlotsListener) dirtyMarkListener).onDirtySlots(changedSlots);
+            } else {
+                dirtyMarkListener.onDirty();
+            }
         }
-	}
+        changedSlots.clear();
+    }
 
     @Override
     public String getName() {
@@ -275,4 +351,4 @@ public class SimpleInventory implements INBTInventory {
     public void fromNBT(NBTTagCompound tag) {
         readFromNBT(tag);
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,6 @@
 package org.cyclops.cyclopscore.modcompat.capabilities;
 
+import com.google.common.base.Supplier;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
@@ -21,11 +22,15 @@ import org.cyclops.cyclopscore.helper.Helpers;
 import org.cyclops.cyclopscore.init.ModBase;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 /**
  * Registry for capabilities created by this mod.
+ *
+ * The constructors that apply to a class, both exact and inheritable, are resolved once per class
+ * and cached until a new constructor is registered or the registry is baked.
  * @author rubensworks
  */
 public class CapabilityConstructorRegistry {
@@ -42,6 +47,10 @@ public class CapabilityConstructorRegistry {
     private Collection<Pair<Class<?>, ICapabilityConstructor<?, ?, ?>>>
             capabilityConstructorsItemSuper = Sets.newHashSet();
 
+    private volatile ResolvedConstructors resolvedConstructorsTile;
+    private volatile ResolvedConstructors resolvedConstructorsEntity;
+    private volatile ResolvedConstructors resolvedConstructorsItem;
+
     protected final ModBase mod;
     protected boolean baked = false;
     protected boolean registeredTileEventListener = false;
@@ -50,6 +59,7 @@ public class CapabilityConstructorRegistry {
 
     public CapabilityConstructorRegistry(ModBase mod) {
         this.mod = mod;
+        invalidateResolvedConstructors();
     }
 
     protected ModBase getMod() {
@@ -62,6 +72,16 @@ public class CapabilityConstructorRegistry {
         }
     }
 
+    /**
+     * Clear the resolved constructors of all classes.
+     * This must be called after each change to the registered constructors.
+     */
+    protected void invalidateResolvedConstructors() {
+        resolvedConstructorsTile = new ResolvedConstructors(() -> capabilityConstructorsTile, () -> capabilityConstructorsTileSuper);
+        resolvedConstructorsEntity = new ResolvedConstructors(() -> capabilityConstructorsEntity, () -> capabilityConstructorsEntitySuper);
+        resolvedConstructorsItem = new ResolvedConstructors(() -> capabilityConstructorsItem, () -> capabilityConstructorsItemSuper);
+    }
+
     /**
      * Register a tile capability constructor.
      * @param clazz The tile class.
@@ -76,6 +96,7 @@ public class CapabilityConstructorRegistry {
             capabilityConstructorsTile.put(clazz, constructors);
         }
         constructors.add(constructor);
+        invalidateResolvedConstructors();
 
         if (!registeredTileEventListener) {
             registeredTileEventListener = true;
@@ -97,6 +118,7 @@ public class CapabilityConstructorRegistry {
             capabilityConstructorsEntity.put(clazz, constructors);
         }
         constructors.add(constructor);
+        invalidateResolvedConstructors();
 
         if (!registeredEntityEventListener) {
             registeredEntityEventListener = true;
@@ -118,6 +140,7 @@ public class CapabilityConstructorRegistry {
             capabilityConstructorsItem.put(clazz, constructors);
         }
         constructors.add(constructor);
+        invalidateResolvedConstructors();
 
         if (!registeredItemStackEventListener) {
             registeredItemStackEventListener = true;
@@ -137,6 +160,7 @@ public class CapabilityConstructorRegistry {
         checkNotBaked();
         capabilityConstructorsTileSuper.add(
                 Pair.<Class<?>, ICapabilityConstructor<?, ?, ?>>of(clazz, constructor));
+        invalidateResolvedConstructors();
 
         if (!registeredTileEventListener) {
             registeredTileEventListener = true;
@@ -156,6 +180,7 @@ public class CapabilityConstructorRegistry {
         checkNotBaked();
         capabilityConstructorsEntitySuper.add(
                 Pair.<Class<?>, ICapabilityConstructor<?, ?, ?>>of(clazz, constructor));
+        invalidateResolvedConstructors();
 
         if (!registeredEntityEventListener) {
             registeredEntityEventListener = true;
@@ -174,6 +199,7 @@ public class CapabilityConstructorRegistry {
         checkNotBaked();
         capabilityConstructorsItemSuper.add(
                 Pair.<Class<?>, ICapabilityConstructor<?, ?, ?>>of(clazz, constructor));
+        invalidateResolvedConstructors();
 
         if (!registeredItemStackEventListener) {
             registeredItemStackEventListener = true;
@@ -186,35 +212,69 @@ public class CapabilityConstructorRegistry {
         return capabilityConstructor.createProvider((K) hostType, (H) host);
     }
 
+    /**
+     * Bake this registry if Minecraft has been initialized.
+     * @return If Minecraft has been initialized.
+     */
+    protected boolean bakeIfInitialized() {
+        boolean initialized = baked || Helpers.isMinecraftInitialized();
+        if (!baked && initialized) {
+            bake();
+        }
+        return initialized;
+    }
+
+    /**
+     * @deprecated Use {@link #onLoad(ResolvedConstructors, boolean, Object, Object, AttachCapabilitiesEvent)},
+     *             which reuses the constructors that were resolved for the class.
+     */
+    @Deprecated
     protected <T> void onLoad(Map<Class<? extends T>, List<ICapabilityConstructor<?, ? extends T, ? extends T>>> allConstructors,
                               Collection<Pair<Class<?>, ICapabilityConstructor<?, ?, ?>>> allInheritableConstructors,
                               T object, AttachCapabilitiesEvent<?> event, Class<? extends T> baseClass) {
         onLoad(allConstructors, allInheritableConstructors, object, object, event, baseClass);
     }
 
+    /**
+     * @deprecated Use {@link #onLoad(ResolvedConstructors, boolean, Object, Object, AttachCapabilitiesEvent)},
+     *             which reuses the constructors that were resolved for the class.
+     */
+    @Deprecated
     protected <K, V> void onLoad(Map<Class<? extends K>, List<ICapabilityConstructor<?, ? extends K, ? extends V>>> allConstructors,
                                  Collection<Pair<Class<?>, ICapabilityConstructor<?, ?, ?>>> allInheritableConstructors,
                                  K keyObject, V valueObject, AttachCapabilitiesEvent<?> event, Class<? extends K> baseClass) {
-        boolean initialized = baked || Helpers.isMinecraftInitialized();
-        if (!baked && Helpers.isMinecraftInitialized()) {
-            bake();
-        }
+        boolean initialized = bakeIfInitialized();
+        onLoad(getResolvedConstructors(allConstructors, allInheritableConstructors), initialized, keyObject, valueObject, event);
+    }
 
-        // Normal constructors
-        Collection<ICapabilityConstructor<?, ? extends K, ? extends V>> constructors = allConstructors.get(keyObject.getClass());
-        if (constructors != null) {
-            for (ICapabilityConstructor<?, ? extends K, ? extends V> constructor : constructors) {
-                if (initialized || constructor.getCapability() != null) {
-                    addLoadedCapabilityProvider(event, keyObject, valueObject, constructor);
-                }
-            }
+    /**
+     * Get the resolved constructors for the given constructors.
+     * @param allConstructors The exact constructors.
+     * @param allInheritableConstructors The inheritable constructors.
+     * @return The cached resolved constructors if the given constructors are those of this registry,
+     *         otherwise new resolved constructors.
+     */
+    protected ResolvedConstructors getResolvedConstructors(Map<?, ? extends List<? extends ICapabilityConstructor<?, ?, ?>>> allConstructors,
+                                                           Collection<Pair<Class<?>, ICapabilityConstructor<?, ?, ?>>> allInheritableConstructors) {
+        if (allConstructors == capabilityConstructorsTile && allInheritableConstructors == capabilityConstructorsTileSuper) {
+            return resolvedConstructorsTile;
+        }
+        if (allConstructors == capabilityConstructorsEntity && allInheritableConstructors == capabilityConstructorsEntitySuper) {
+            return resolvedConstructorsEntity;
+        }
+        if (allConstructors == capabilityConstructorsItem && allInheritableConstructors == capabilityConstructorsItemSuper) {
+            return resolvedConstructorsItem;
         }
+        return new ResolvedConstructors(() -> allConstructors, () -> allInheritableConstructors);
+    }
 
-        // Inheritable constructors
-        for (Pair<Class<?>, ICapabilityConstructor<?, ?, ?>> constructorEntry : allInheritableConstructors) {
-            if ((initialized || constructorEntry.getRight().getCapability() != null)
-                    && (keyObject == baseClass || constructorEntry.getLeft() == keyObject || constructorEntry.getLeft().isInstance(keyObject))) {
-                addLoadedCapabilityProvider(event, keyObject, valueObject, constructorEntry.getRight());
+    protected <K, V> void onLoad(ResolvedConstructors resolvedConstructors, boolean initialized, K keyObject, V valueObject,
+                                 AttachCapabilitiesEvent<?> event) {
+        List<ICapabilityConstructor<?, ?, ?>> constructors = resolvedConstructors.get(keyObject.getClass());
+        for (int i = 0; i < constructors.size(); i++) {
+            ICapabilityConstructor<?, ?, ?> constructor = constructors.get(i);
+            if (initialized || constructor.getCapability() != null) {
+                addLoadedCapabilityProvider(event, keyObject, valueObject, constructor);
             }
         }
     }
@@ -276,19 +336,22 @@ public class CapabilityConstructorRegistry {
         capabilityConstructorsEntitySuper = ImmutableList.copyOf(capabilityConstructorsEntitySuper);
         capabilityConstructorsItemSuper = ImmutableList.copyOf(capabilityConstructorsItemSuper);
 
+        invalidateResolvedConstructors();
     }
 
     public class TileEventListener {
         @SubscribeEvent
         public void onTileLoad(AttachCapabilitiesEvent<TileEntity> event) {
-            onLoad(capabilityConstructorsTile, capabilityConstructorsTileSuper, event.getObject(), event, TileEntity.class);
+            boolean initialized = bakeIfInitialized();
+            onLoad(resolvedConstructorsTile, initialized, event.getObject(), event.getObject(), event);
         }
     }
 
     public class EntityEventListener {
         @SubscribeEvent
         public void onEntityLoad(AttachCapabilitiesEvent<Entity> event) {
-            onLoad(capabilityConstructorsEntity, capabilityConstructorsEntitySuper, event.getObject(), event, Entity.class);
+            boolean initialized = bakeIfInitialized();
+            onLoad(resolvedConstructorsEntity, initialized, event.getObject(), event.getObject(), event);
         }
     }
 
@@ -296,8 +359,40 @@ public class CapabilityConstructorRegistry {
         @SubscribeEvent
         public void onItemStackLoad(AttachCapabilitiesEvent<ItemStack> event) {
             if (!event.getObject().isEmpty()) {
-                onLoad(capabilityConstructorsItem, capabilityConstructorsItemSuper, event.getObject().getItem(), event.getObject(), event, Item.class);
+                boolean initialized = bakeIfInitialized();
+                onLoad(resolvedConstructorsItem, initialized, event.getObject().getItem(), event.getObject(), event);
+            }
+        }
+    }
+
+    /**
+     * The exact and inheritable constructors per class.
+     * Classes without constructors share an empty list.
+     */
+    protected static class ResolvedConstructors extends ClassValue<List<ICapabilityConstructor<?, ?, ?>>> {
+
+        private final Supplier<? extends Map<?, ? extends List<? extends ICapabilityConstructor<?, ?, ?>>>> constructors;
+        private final Supplier<? extends Collection<Pair<Class<?>, ICapabilityConstructor<?, ?, ?>>>> inheritableConstructors;
+
+        public ResolvedConstructors(Supplier<? extends Map<?, ? extends List<? extends ICapabilityConstructor<?, ?, ?>>>> constructors,
+                                    Supplier<? extends Collection<Pair<Class<?>, ICapabilityConstructor<?, ?, ?>>>> inheritableConstructors) {
+            this.constructors = constructors;
+            this.inheritableConstructors = inheritableConstructors;
+        }
+
+        @Override
+        protected List<ICapabilityConstructor<?, ?, ?>> computeValue(Class<?> clazz) {
+            List<ICapabilityConstructor<?, ?, ?>> resolved = Lists.newArrayList();
+            List<? extends ICapabilityConstructor<?, ?, ?>> exactConstructors = constructors.get().get(clazz);
+            if (exactConstructors != null) {
+                resolved.addAll(exactConstructors);
+            }
+            for (Pair<Class<?>, ICapabilityConstructor<?, ?, ?>> constructorEntry : inheritableConstructors.get()) {
+                if (constructorEntry.getLeft().isAssignableFrom(clazz)) {
+                    resolved.add(constructorEntry.getRight());
+                }
             }
+            return resolved.isEmpty() ? Collections.<ICapabilityConstructor<?, ?, ?>>emptyList() : ImmutableList.copyOf(resolved);
         }
     }
 }
@@ -10,6 +10,9 @@ import org.apache.commons.lang3.ClassUtils;
 import org.cyclops.cyclopscore.datastructure.SingleCache;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.util.Arrays;
 import java.util.Collections;
@@ -25,9 +28,25 @@ import java.util.Set;
  */
 public abstract class PacketCodec extends PacketBase {
 	
+	private static final int NO_CODEC_TYPE = 0;
+	private static final byte LIST_LAYOUT_DENSE = 0;
+	private static final byte LIST_LAYOUT_SPARSE = 1;
+
 	private static Map<Class<?>, ICodecAction> codecActions = Maps.newHashMap();
+	private static Map<Class<?>, Integer> codecTypeIds = Maps.newHashMap();
+	private static List<ICodecAction> codecActionsById = Lists.newArrayList((ICodecAction) null);
+	private static final ClassValue<Integer> CODEC_TYPE_ID_CACHE = new ClassValue<Integer>() {
+		@Override
+		protected Integer computeValue(Class<?> type) {
+			if(ClassUtils.isPrimitiveWrapper(type)) {
+				type = ClassUtils.wrapperToPrimitive(type);
+			}
+			Integer id = codecTypeIds.get(type);
+			return id == null ? NO_CODEC_TYPE : id;
+		}
+	};
 	static {
-		codecActions.put(String.class, new ICodecAction() {
+		registerCodecAction(String.class, new ICodecAction() {
 
 			@Override
 			public void encode(Object object, ExtendedBuffer output) {
@@ -40,7 +59,7 @@ public abstract class PacketCodec extends PacketBase {
 			}
 		});
 		
-		codecActions.put(double.class, new ICodecAction() {
+		registerCodecAction(double.class, new ICodecAction() {
 
 			@Override
 			public void encode(Object object, ExtendedBuffer output) {
@@ -53,7 +72,7 @@ public abstract class PacketCodec extends PacketBase {
 			}
 		});
 		
-		codecActions.put(int.class, new ICodecAction() {
+		registerCodecAction(int.class, new ICodecAction() {
 
 			@Override
 			public void encode(Object object, ExtendedBuffer output) {
@@ -66,7 +85,7 @@ public abstract class PacketCodec extends PacketBase {
 			}
 		});
 
-		codecActions.put(short.class, new ICodecAction() {
+		registerCodecAction(short.class, new ICodecAction() {
 
 			@Override
 			public void encode(Object object, ExtendedBuffer output) {
@@ -79,7 +98,7 @@ public abstract class PacketCodec extends PacketBase {
 			}
 		});
 		
-		codecActions.put(boolean.class, new ICodecAction() {
+		registerCodecAction(boolean.class, new ICodecAction() {
 
 			@Override
 			public void encode(Object object, ExtendedBuffer output) {
@@ -92,7 +111,7 @@ public abstract class PacketCodec extends PacketBase {
 			}
 		});
 		
-		codecActions.put(float.class, new ICodecAction() {
+		registerCodecAction(float.class, new ICodecAction() {
 
 			@Override
 			public void encode(Object object, ExtendedBuffer output) {
@@ -105,7 +124,7 @@ public abstract class PacketCodec extends PacketBase {
 			}
 		});
 
-		codecActions.put(Vec3d.class, new ICodecAction() {
+		registerCodecAction(Vec3d.class, new ICodecAction() {
 			@Override
 			public void encode(Object object, ExtendedBuffer output) {
 				Vec3d v = (Vec3d)object;
@@ -123,13 +142,13 @@ public abstract class PacketCodec extends PacketBase {
 			}
 		});
 		
-		codecActions.put(Map.class, new ICodecAction() {
+		registerCodecAction(Map.class, new ICodecAction() {
 			
 			// Packet structure:
-			// Map length (int)
+			// Map length (varint)
 			// --- end if length == 0
-			// Key class name (UTF)
-			// Value class name (UTF)
+			// Key codec type id (varint)
+			// Value codec type id (varint)
 			// for length
 			//   key
 			//   value
@@ -138,18 +157,20 @@ public abstract class PacketCodec extends PacketBase {
 			@Override
 			public void encode(Object object, ExtendedBuffer output) {
 				Map map = (Map) object;
-				output.writeInt(map.size());
+				output.writeVarInt(map.size());
 				Set<Map.Entry> entries = map.entrySet();
 				ICodecAction keyAction = null;
 				ICodecAction valueAction = null;
 				for(Map.Entry entry : entries) {
 					if(keyAction == null) {
-						keyAction = getAction(entry.getKey().getClass());
-						output.writeString(entry.getKey().getClass().getName());
+						int keyTypeId = getCodecTypeId(entry.getKey().getClass());
+						keyAction = codecActionsById.get(keyTypeId);
+						output.writeVarInt(keyTypeId);
 					}
 					if(valueAction == null) {
-						valueAction = getAction(entry.getValue().getClass());
-						output.writeString(entry.getValue().getClass().getName());
+						int valueTypeId = getCodecTypeId(entry.getValue().getClass());
+						valueAction = codecActionsById.get(valueTypeId);
+						output.writeVarInt(valueTypeId);
 					}
 					keyAction.encode(entry.getKey(), output);
 					valueAction.encode(entry.getValue(), output);
@@ -160,26 +181,22 @@ public abstract class PacketCodec extends PacketBase {
 			@Override
 			public Object decode(ExtendedBuffer input) {
 				Map map = Maps.newHashMap();
-				int size = input.readInt();
+				int size = input.readVarInt();
 				if(size == 0) {
 					return map;
 				}
-				try {
-					ICodecAction keyAction = getAction(Class.forName(input.readString()));
-					ICodecAction valueAction = getAction(Class.forName(input.readString()));
-					for(int i = 0; i < size; i++) {
-						Object key = keyAction.decode(input);
-						Object value = valueAction.decode(input);
-						map.put(key, value);
-					}
-				} catch (ClassNotFoundException e) {
-					e.printStackTrace();
+				ICodecAction keyAction = getActionById(input.readVarInt());
+				ICodecAction valueAction = getActionById(input.readVarInt());
+				for(int i = 0; i < size; i++) {
+					Object key = keyAction.decode(input);
+					Object value = valueAction.decode(input);
+					map.put(key, value);
 				}
 				return map;
 			}
 		});
 
-		codecActions.put(NBTTagCompound.class, new ICodecAction() {
+		registerCodecAction(NBTTagCompound.class, new ICodecAction() {
 
 			@Override
 			public void encode(Object object, ExtendedBuffer output) {
@@ -196,7 +213,7 @@ public abstract class PacketCodec extends PacketBase {
 			}
 		});
 
-		codecActions.put(ItemStack.class, new ICodecAction() {
+		registerCodecAction(ItemStack.class, new ICodecAction() {
 
 			@Override
 			public void encode(Object object, ExtendedBuffer output) {
@@ -213,36 +230,61 @@ public abstract class PacketCodec extends PacketBase {
 			}
 		});
 
-		codecActions.put(List.class, new ICodecAction() {
+		registerCodecAction(List.class, new ICodecAction() {
 
 			// Packet structure:
-			// list length (int)
+			// list length (varint)
 			// --- end if length == 0
-			// Value class name (UTF)
-			// 	id + value
-			// -1
+			// Value codec type id (varint), 0 if all elements are null
+			// --- end if all elements are null
+			// Layout (byte)
+			// if dense:
+			//   value for length
+			// if sparse:
+			//   non-null element count (varint)
+			//   for count
+			//     gap since the previous non-null index (varint) + value
 
 			@Override
 			public void encode(Object object, ExtendedBuffer output) {
 				List<?> list = (List<?>) object;
-				output.writeInt(list.size());
+				output.writeVarInt(list.size());
 				if(list.size() == 0) return;
-				ICodecAction valueAction = null;
-				for(int i = 0; i < list.size(); i++) {
-					Object value = list.get(i);
+				int nonNullCount = 0;
+				Object firstValue = null;
+				for(Object value : list) {
 					if(value != null) {
-						if (valueAction == null) {
-							valueAction = getAction(value.getClass());
-							output.writeString(value.getClass().getName());
+						if(firstValue == null) {
+							firstValue = value;
 						}
-						output.writeInt(i);
-						valueAction.encode(value, output);
+						nonNullCount++;
 					}
 				}
-                if(valueAction == null) {
-					output.writeString("__noclass");
+				if(firstValue == null) {
+					output.writeVarInt(NO_CODEC_TYPE);
+					return;
+				}
+				int valueTypeId = getCodecTypeId(firstValue.getClass());
+				ICodecAction valueAction = codecActionsById.get(valueTypeId);
+				output.writeVarInt(valueTypeId);
+				if(nonNullCount == list.size()) {
+					output.writeByte(LIST_LAYOUT_DENSE);
+					for(Object value : list) {
+						valueAction.encode(value, output);
+					}
 				} else {
-					output.writeInt(-1);
+					output.writeByte(LIST_LAYOUT_SPARSE);
+					output.writeVarInt(nonNullCount);
+					int i = 0;
+					int nextIndex = 0;
+					for(Object value : list) {
+						if(value != null) {
+							output.writeVarInt(i - nextIndex);
+							valueAction.encode(value, output);
+							nextIndex = i + 1;
+						}
+						i++;
+					}
 				}
 			}
 
@@ -250,136 +292,158 @@ public abstract class PacketCodec extends PacketBase {
 			@Override
 			public Object decode(ExtendedBuffer input) {
 				List list;
-				int size = input.readInt();
+				int size = input.readVarInt();
 				if(size == 0) {
 					return Collections.emptyList();
 				} else {
 					list = Lists.newArrayListWithExpectedSize(size);
 				}
-				try {
-					String className = input.readString();
-					if(!className.equals("__noclass")) {
-						ICodecAction valueAction = getAction(Class.forName(className));
-                        int i, currentLength = 0;
-                        while((i = input.readInt()) >= 0) {
-                            while(currentLength < i) {
-                                list.add(null);
-                                currentLength++;
-                            }
-                            Object value = valueAction.decode(input);
-                            list.add(value);
-                            currentLength++;
-                        }
-                        while(currentLength < size) {
-                            list.add(null);
-                            currentLength++;
-                        }
-					} else {
-						for (int i = 0; i < size; i++) {
+				int valueTypeId = input.readVarInt();
+				if(valueTypeId == NO_CODEC_TYPE) {
+					for (int i = 0; i < size; i++) {
+						list.add(null);
+					}
+					return list;
+				}
+				ICodecAction valueAction = getActionById(valueTypeId);
+				if(input.readByte() == LIST_LAYOUT_DENSE) {
+					for (int i = 0; i < size; i++) {
+						list.add(valueAction.decode(input));
+					}
+				} else {
+					int count = input.readVarInt();
+					for (int i = 0; i < count; i++) {
+						int gap = input.readVarInt();
+						for (int j = 0; j < gap; j++) {
 							list.add(null);
 						}
+						list.add(valueAction.decode(input));
+					}
+					while(list.size() < size) {
+						list.add(null);
 					}
-				} catch (ClassNotFoundException e) {
-					e.printStackTrace();
 				}
 				return list;
 			}
 		});
 	}
 
-    protected SingleCache<Void, List<Field>> fieldCache = new SingleCache<Void, List<Field>>(
-            new SingleCache.ICacheUpdater<Void, List<Field>>() {
-
-        @Override
-        public List<Field> getNewValue(Void key) {
-			List<Field> fieldList = Lists.newLinkedList();
-
-			Class<?> clazz = PacketCodec.this.getClass();
-			for (; clazz != PacketCodec.class && clazz != null; clazz = clazz.getSuperclass()) {
-				Field[] fields = clazz.getDeclaredFields();
-
-				// Sort this because the Java API tells us that getDeclaredFields()
-				// does not deterministically define the order of the fields in the array.
-				// Otherwise we might get nasty class cast exceptions when running in SMP.
-				Arrays.sort(fields, new Comparator<Field>() {
-
-					@Override
-					public int compare(Field o1, Field o2) {
-						return o1.getName().compareTo(o2.getName());
-					}
+	private static final ClassValue<CodecPlan> CODEC_PLANS = new ClassValue<CodecPlan>() {
+		@Override
+		protected CodecPlan computeValue(Class<?> type) {
+			return new CodecPlan(type);
+		}
+	};
+
+	/**
+	 * Build and validate the codec of the given packet type.
+	 * This is called when registering packets in {@link PacketHandler}, so that invalid packets fail early.
+	 * @param packetType The packet type.
+	 * @throws IllegalArgumentException If a {@link CodecField} has a type for which no codec action exists.
+	 */
+	public static void compileCodec(Class<? extends PacketCodec> packetType) {
+		CodecPlan plan = CODEC_PLANS.get(packetType);
+		if(!plan.unsupportedFields.isEmpty()) {
+			throw new IllegalArgumentException("No ICodecAction was found for the fields " + plan.unsupportedFields
+					+ " in packet " + packetType.getName() + ". You should add one in PacketCodec.");
+		}
+	}
 
-				});
+	/**
+	 * @deprecated Use {@link #getCodecFields()}, the fields are built once per packet type.
+	 */
+	@Deprecated
+	protected SingleCache<Void, List<Field>> fieldCache = new SingleCache<Void, List<Field>>(
+			new SingleCache.ICacheUpdater<Void, List<Field>>() {
 
-				for (final Field field : fields) {
-					if (field.isAnnotationPresent(CodecField.class)) {
-						fieldList.add(field);
-					}
-				}
-			}
+		@Override
+		public List<Field> getNewValue(Void key) {
+			return getCodecFields();
+		}
 
-            return fieldList;
-        }
+		@Override
+		public boolean isKeyEqual(Void cacheKey, Void newKey) {
+			return true;
+		}
 
-        @Override
-        public boolean isKeyEqual(Void cacheKey, Void newKey) {
-            return true;
-        }
+	});
 
-    });
+	/**
+	 * @return The fields annotated with {@link CodecField} of this packet, in encoding order.
+	 */
+	protected List<Field> getCodecFields() {
+		return CODEC_PLANS.get(getClass()).fields;
+	}
 	
 	protected static ICodecAction getAction(Class<?> clazz) {
-		if(ClassUtils.isPrimitiveWrapper(clazz)) {
-			clazz = ClassUtils.wrapperToPrimitive(clazz);
-		}
-		ICodecAction action = codecActions.get(clazz);
+		ICodecAction action = getActionSilent(clazz);
 		if(action == null) {
 			System.err.println("No ICodecAction was found for " + clazz
 					+ ". You should add one in PacketCodec.");
 		}
 		return action;
 	}
-	
-	private void loopCodecFields(ICodecRunnable runnable) {
-		try {
-			for (Field field : fieldCache.get(null)) {
-				Class<?> clazz = field.getType();
-				ICodecAction action = getAction(clazz);
-
-				// Make private fields temporarily accessible.
-				boolean accessible = field.isAccessible();
-				if (!accessible) {
-					field.setAccessible(true);
-				}
-				runnable.run(field, action);
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
+
+	private static void registerCodecAction(Class<?> clazz, ICodecAction action) {
+		codecActions.put(clazz, action);
+		codecTypeIds.put(clazz, codecActionsById.size());
+		codecActionsById.add(action);
+	}
+
+	/**
+	 * Get the registered codec type id of the given class, used to identify collection element codecs.
+	 * Results are cached per class, so this does not load or reflect on classes when encoding.
+	 * @param clazz The class of an element.
+	 * @return The type id.
+	 * @throws IllegalArgumentException If no codec action exists for the class.
+	 */
+	protected static int getCodecTypeId(Class<?> clazz) {
+		int id = CODEC_TYPE_ID_CACHE.get(clazz);
+		if(id == NO_CODEC_TYPE) {
+			throw new IllegalArgumentException("No ICodecAction was found for " + clazz
+					+ ". You should add one in PacketCodec.");
+		}
+		return id;
+	}
+
+	private static ICodecAction getActionById(int id) {
+		if(id <= NO_CODEC_TYPE || id >= codecActionsById.size()) {
+			throw new IllegalArgumentException("Received an unknown codec type id " + id + ".");
+		}
+		return codecActionsById.get(id);
+	}
+
+	private static ICodecAction getActionSilent(Class<?> clazz) {
+		if(ClassUtils.isPrimitiveWrapper(clazz)) {
+			clazz = ClassUtils.wrapperToPrimitive(clazz);
 		}
+		return codecActions.get(clazz);
 	}
 
 	@Override
 	public void encode(final ExtendedBuffer output) {
-		loopCodecFields((field, action) -> {
-            Object object = null;
-            try {
-                object = field.get(PacketCodec.this);
-            } catch (IllegalArgumentException | IllegalAccessException e) {
-                e.printStackTrace();
-            }
-            action.encode(object, output);
-        });
+		try {
+			for (FieldCodec fieldCodec : CODEC_PLANS.get(getClass()).fieldCodecs) {
+				fieldCodec.encode(this, output);
+			}
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable e) {
+			e.printStackTrace();
+		}
 	}
 
 	@Override
     public void decode(final ExtendedBuffer input) {
-		loopCodecFields((field, action) -> {
-            Object object = action.decode(input);
-            try {
-                field.set(PacketCodec.this, object);
-            } catch (IllegalArgumentException | IllegalAccessException e) {
-                e.printStackTrace();
-            }
-        });
+		try {
+			for (FieldCodec fieldCodec : CODEC_PLANS.get(getClass()).fieldCodecs) {
+				fieldCodec.decode(this, input);
+			}
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable e) {
+			e.printStackTrace();
+		}
 	}
 	
 	private interface ICodecAction {
@@ -399,16 +463,189 @@ public abstract class PacketCodec extends PacketBase {
 	    public Object decode(ExtendedBuffer input);
 	    
 	}
-	
-	private interface ICodecRunnable {
-		
-		/**
-		 * Run a type of codec.
-		 * @param field The field annotated with {@link CodecField}.
-		 * @param action The action that must be applied to the field.
-		 */
-		public void run(Field field, ICodecAction action);
-		
+
+	/**
+	 * The codec of all {@link CodecField}s of a packet type, built once per type.
+	 * Primitive fields are accessed through primitive-typed method handles without boxing.
+	 */
+	private static class CodecPlan {
+
+		private final List<Field> fields;
+		private final FieldCodec[] fieldCodecs;
+		private final List<String> unsupportedFields = Lists.newArrayList();
+
+		public CodecPlan(Class<?> packetType) {
+			List<Field> fieldList = Lists.newArrayList();
+			List<FieldCodec> fieldCodecList = Lists.newArrayList();
+			for (Class<?> clazz = packetType; clazz != PacketCodec.class && clazz != null; clazz = clazz.getSuperclass()) {
+				Field[] fields = clazz.getDeclaredFields();
+
+				// Sort this because the Java API tells us that getDeclaredFields()
+				// does not deterministically define the order of the fields in the array.
+				// Otherwise we might get nasty class cast exceptions when running in SMP.
+				Arrays.sort(fields, Comparator.comparing(Field::getName));
+
+				for (Field field : fields) {
+					if (field.isAnnotationPresent(CodecField.class)) {
+						field.setAccessible(true);
+						fieldList.add(field);
+						FieldCodec fieldCodec = createFieldCodec(field);
+						if (fieldCodec == null) {
+							unsupportedFields.add(field.getName());
+							System.err.println("No ICodecAction was found for " + field.getType()
+									+ ". You should add one in PacketCodec.");
+						} else {
+							fieldCodecList.add(fieldCodec);
+						}
+					}
+				}
+			}
+			this.fields = Collections.unmodifiableList(fieldList);
+			this.fieldCodecs = fieldCodecList.toArray(new FieldCodec[fieldCodecList.size()]);
+		}
+
+		private static FieldCodec createFieldCodec(Field field) {
+			MethodHandle getter;
+			MethodHandle setter;
+			try {
+				getter = MethodHandles.lookup().unreflectGetter(field);
+				setter = MethodHandles.lookup().unreflectSetter(field);
+			} catch (IllegalAccessException e) {
+				throw new IllegalArgumentException("Could not access the codec field " + field, e);
+			}
+			Class<?> type = field.getType();
+			if (type == int.class) {
+				return new IntFieldCodec(getter, setter);
+			} else if (type == double.class) {
+				return new DoubleFieldCodec(getter, setter);
+			} else if (type == float.class) {
+				return new FloatFieldCodec(getter, setter);
+			} else if (type == short.class) {
+				return new ShortFieldCodec(getter, setter);
+			} else if (type == boolean.class) {
+				return new BooleanFieldCodec(getter, setter);
+			}
+			ICodecAction action = getActionSilent(type);
+			if (action == null) {
+				return null;
+			}
+			return new ObjectFieldCodec(getter, setter, action);
+		}
+	}
+
+	private static abstract class FieldCodec {
+
+		protected final MethodHandle getter;
+		protected final MethodHandle setter;
+
+		protected FieldCodec(MethodHandle getter, MethodHandle setter, Class<?> type) {
+			this.getter = getter.asType(MethodType.methodType(type, Object.class));
+			this.setter = setter.asType(MethodType.methodType(void.class, Object.class, type));
+		}
+
+		public abstract void encode(Object packet, ExtendedBuffer output) throws Throwable;
+		public abstract void decode(Object packet, ExtendedBuffer input) throws Throwable;
+
+	}
+
+	private static class IntFieldCodec extends FieldCodec {
+		public IntFieldCodec(MethodHandle getter, MethodHandle setter) {
+			super(getter, setter, int.class);
+		}
+
+		@Override
+		public void encode(Object packet, ExtendedBuffer output) throws Throwable {
+			output.writeInt((int) getter.invokeExact(packet));
+		}
+
+		@Override
+		public void decode(Object packet, ExtendedBuffer input) throws Throwable {
+			setter.invokeExact(packet, input.readInt());
+		}
+	}
+
+	private static class DoubleFieldCodec extends FieldCodec {
+		public DoubleFieldCodec(MethodHandle getter, MethodHandle setter) {
+			super(getter, setter, double.class);
+		}
+
+		@Override
+		public void encode(Object packet, ExtendedBuffer output) throws Throwable {
+			output.writeDouble((double) getter.invokeExact(packet));
+		}
+
+		@Override
+		public void decode(Object packet, ExtendedBuffer input) throws Throwable {
+			setter.invokeExact(packet, input.readDouble());
+		}
+	}
+
+	private static class FloatFieldCodec extends FieldCodec {
+		public FloatFieldCodec(MethodHandle getter, MethodHandle setter) {
+			super(getter, setter, float.class);
+		}
+
+		@Override
+		public void encode(Object packet, ExtendedBuffer output) throws Throwable {
+			output.writeFloat((float) getter.invokeExact(packet));
+		}
+
+		@Override
+		public void decode(Object packet, ExtendedBuffer input) throws Throwable {
+			setter.invokeExact(packet, input.readFloat());
+		}
+	}
+
+	private static class ShortFieldCodec extends FieldCodec {
+		public ShortFieldCodec(MethodHandle getter, MethodHandle setter) {
+			super(getter, setter, short.class);
+		}
+
+		@Override
+		public void encode(Object packet, ExtendedBuffer output) throws Throwable {
+			output.writeShort((short) getter.invokeExact(packet));
+		}
+
+		@Override
+		public void decode(Object packet, ExtendedBuffer input) throws Throwable {
+			setter.invokeExact(packet, input.readShort());
+		}
+	}
+
+	private static class BooleanFieldCodec extends FieldCodec {
+		public BooleanFieldCodec(MethodHandle getter, MethodHandle setter) {
+			super(getter, setter, boolean.class);
+		}
+
+		@Override
+		public void encode(Object packet, ExtendedBuffer output) throws Throwable {
+			output.writeBoolean((boolean) getter.invokeExact(packet));
+		}
+
+		@Override
+		public void decode(Object packet, ExtendedBuffer input) throws Throwable {
+			setter.invokeExact(packet, input.readBoolean());
+		}
+	}
+
+	private static class ObjectFieldCodec extends FieldCodec {
+
+		private final ICodecAction action;
+
+		public ObjectFieldCodec(MethodHandle getter, MethodHandle setter, ICodecAction action) {
+			super(getter, setter, Object.class);
+			this.action = action;
+		}
+
+		@Override
+		public void encode(Object packet, ExtendedBuffer output) throws Throwable {
+			action.encode((Object) getter.invokeExact(packet), output);
+		}
+
+		@Override
+		public void decode(Object packet, ExtendedBuffer input) throws Throwable {
+			setter.invokeExact(packet, action.decode(input));
+		}
 	}
 	
 }
@@ -4,7 +4,9 @@ import io.netty.channel.ChannelHandler.Sharable;
 import net.minecraft.client.Minecraft;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.network.Packet;
+import net.minecraft.server.management.PlayerChunkMapEntry;
 import net.minecraft.util.IThreadListener;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.WorldServer;
 import net.minecraftforge.fml.common.FMLCommonHandler;
 import net.minecraftforge.fml.common.network.NetworkRegistry;
@@ -56,9 +58,14 @@ public final class PacketHandler {
     
     /**
      * Register a new packet.
+     * For {@link PacketCodec} packets, the codec is built and validated at this point.
      * @param packetType The class of the packet.
+     * @throws IllegalArgumentException If a {@link CodecField} of the packet can not be encoded.
      */
     public void register(Class<? extends PacketBase> packetType) {
+        if(PacketCodec.class.isAssignableFrom(packetType)) {
+            PacketCodec.compileCodec(packetType.asSubclass(PacketCodec.class));
+        }
         int discriminator = Helpers.getNewId(mod, IDType.PACKET);
         if(MinecraftHelpers.isClientSide()) {
             networkWrapper.registerMessage(handlerClient, packetType, discriminator, Side.CLIENT);
@@ -101,6 +108,19 @@ public final class PacketHandler {
         networkWrapper.sendToDimension(packet, dimension);
     }
     
+    /**
+     * Send a packet to all players that are tracking the chunk of the given position.
+     * @param packet The packet.
+     * @param world The world.
+     * @param pos The position in the world.
+     */
+    public void sendToAllTracking(PacketBase packet, WorldServer world, BlockPos pos) {
+        PlayerChunkMapEntry entry = world.getPlayerChunkMap().getEntry(pos.getX() >> 4, pos.getZ() >> 4);
+        if(entry != null) {
+            entry.sendPacket(toMcPacket(packet));
+        }
+    }
+
     /**
      * Send a packet to everything.
      * @param packet The packet.
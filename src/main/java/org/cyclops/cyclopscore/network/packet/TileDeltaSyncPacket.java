@@ -0,0 +1,62 @@
+package org.cyclops.cyclopscore.network.packet;
+
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraftforge.fml.relauncher.Side;
+import net.minecraftforge.fml.relauncher.SideOnly;
+import org.cyclops.cyclopscore.helper.TileHelpers;
+import org.cyclops.cyclopscore.network.CodecField;
+import org.cyclops.cyclopscore.network.PacketCodec;
+import org.cyclops.cyclopscore.tileentity.CyclopsTileEntity;
+
+/**
+ * Packet for sending the changed NBT data of a tile entity from server to client.
+ * @see CyclopsTileEntity#isDeltaSync()
+ * @author rubensworks
+ *
+ */
+public class TileDeltaSyncPacket extends PacketCodec {
+
+	@CodecField
+	private int x;
+	@CodecField
+	private int y;
+	@CodecField
+	private int z;
+	@CodecField
+	private NBTTagCompound delta;
+
+    public TileDeltaSyncPacket() {
+
+    }
+
+    public TileDeltaSyncPacket(BlockPos pos, NBTTagCompound delta) {
+		this.x = pos.getX();
+		this.y = pos.getY();
+		this.z = pos.getZ();
+		this.delta = delta;
+    }
+
+	@Override
+	public boolean isAsync() {
+		return false;
+	}
+
+	@Override
+	@SideOnly(Side.CLIENT)
+	public void actionClient(World world, EntityPlayer player) {
+		CyclopsTileEntity tile = TileHelpers.getSafeTile(world, new BlockPos(x, y, z), CyclopsTileEntity.class);
+		if(tile != null) {
+			tile.onDeltaUpdateReceived(delta);
+		}
+	}
+
+	@Override
+	public void actionServer(World world, EntityPlayerMP player) {
+
+	}
+	
+}
@@ -0,0 +1,59 @@
+package org.cyclops.cyclopscore.network.packet;
+
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraftforge.fml.relauncher.Side;
+import net.minecraftforge.fml.relauncher.SideOnly;
+import org.cyclops.cyclopscore.helper.TileHelpers;
+import org.cyclops.cyclopscore.network.CodecField;
+import org.cyclops.cyclopscore.network.PacketCodec;
+import org.cyclops.cyclopscore.tileentity.CyclopsTileEntity;
+import org.cyclops.cyclopscore.tileentity.TileUpdateScheduler;
+
+import java.util.List;
+
+/**
+ * Packet for sending the updates of multiple tile entities in a chunk from server to client.
+ * @see TileUpdateScheduler
+ * @author rubensworks
+ *
+ */
+public class TileUpdateBatchPacket extends PacketCodec {
+
+	@CodecField
+	private List<NBTTagCompound> entries;
+
+    public TileUpdateBatchPacket() {
+
+    }
+
+    public TileUpdateBatchPacket(List<NBTTagCompound> entries) {
+		this.entries = entries;
+    }
+
+	@Override
+	public boolean isAsync() {
+		return false;
+	}
+
+	@Override
+	@SideOnly(Side.CLIENT)
+	public void actionClient(World world, EntityPlayer player) {
+		for (NBTTagCompound entry : entries) {
+			BlockPos pos = new BlockPos(entry.getInteger("x"), entry.getInteger("y"), entry.getInteger("z"));
+			CyclopsTileEntity tile = TileHelpers.getSafeTile(world, pos, CyclopsTileEntity.class);
+			if(tile != null) {
+				tile.onScheduledUpdateReceived(entry);
+			}
+		}
+	}
+
+	@Override
+	public void actionServer(World world, EntityPlayerMP player) {
+
+	}
+	
+}
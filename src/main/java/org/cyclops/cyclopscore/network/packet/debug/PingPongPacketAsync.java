@@ -67,7 +67,7 @@ public class PingPongPacketAsync extends PacketCodec {
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
-		List<Field> fields = fieldCache.get(null);
+		List<Field> fields = getCodecFields();
 		for(Field field : fields) {
 			sb.append(" ");
 			sb.append(field);
@@ -0,0 +1,260 @@
+package org.cyclops.cyclopscore.persist.nbt;
+
+import com.google.common.collect.Lists;
+import net.minecraft.nbt.NBTTagCompound;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+/**
+ * A compiled persistence plan for all {@link NBTPersist} fields of a class.
+ * Plans are built only once per class, they resolve the {@link NBTClassType} of each field up front
+ * and access fields through {@link MethodHandle}s.
+ * Fields of type int, float and boolean are read and written without boxing.
+ * @author rubensworks
+ */
+public final class NBTPersistPlan {
+
+    private static final ClassValue<NBTPersistPlan> PLANS = new ClassValue<NBTPersistPlan>() {
+        @Override
+        protected NBTPersistPlan computeValue(Class<?> type) {
+            return new NBTPersistPlan(type);
+        }
+    };
+
+    private final Class<?> clazz;
+    private final FieldAction[] actions;
+
+    private NBTPersistPlan(Class<?> clazz) {
+        this.clazz = clazz;
+        List<FieldAction> actions = Lists.newArrayList();
+        for(Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            for(Field field : c.getDeclaredFields()) {
+                if(field.isAnnotationPresent(NBTPersist.class)) {
+                    actions.add(createAction(field));
+                }
+            }
+        }
+        this.actions = actions.toArray(new FieldAction[actions.size()]);
+    }
+
+    /**
+     * Get the persistence plan for the given class.
+     * @param clazz A class.
+     * @return The cached plan.
+     */
+    public static NBTPersistPlan forClass(Class<?> clazz) {
+        return PLANS.get(clazz);
+    }
+
+    /**
+     * @return The number of persisted fields in this plan.
+     */
+    public int getFieldCount() {
+        return actions.length;
+    }
+
+    /**
+     * Write all persisted fields of the given instance to NBT.
+     * @param instance An instance of the class of this plan.
+     * @param tag The tag to write to.
+     */
+    public void write(Object instance, NBTTagCompound tag) {
+        for(FieldAction action : actions) {
+            try {
+                action.write(instance, tag);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Throwable e) {
+                e.printStackTrace();
+                throw new RuntimeException("Something went wrong with the field " + action.name + " in " + instance + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Read all persisted fields of the given instance from NBT.
+     * @param instance An instance of the class of this plan.
+     * @param tag The tag to read from.
+     */
+    public void read(Object instance, NBTTagCompound tag) {
+        for(FieldAction action : actions) {
+            try {
+                action.read(instance, tag);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Throwable e) {
+                e.printStackTrace();
+                throw new RuntimeException("Can not read the field " + action.name + " in " + instance + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private FieldAction createAction(Field field) {
+        makeAccessible(field);
+        MethodHandle getter;
+        MethodHandle setter;
+        try {
+            getter = MethodHandles.lookup().unreflectGetter(field);
+            setter = MethodHandles.lookup().unreflectSetter(field);
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+            throw new RuntimeException("Could not access field " + field.getName() + " in " + clazz + " " + e.getMessage());
+        }
+        String name = field.getName();
+        boolean useDefaultValue = field.getAnnotation(NBTPersist.class).useDefaultValue();
+        Class<?> type = field.getType();
+        if(type == int.class) {
+            return new IntFieldAction(name, useDefaultValue, getter, setter);
+        } else if(type == float.class) {
+            return new FloatFieldAction(name, useDefaultValue, getter, setter);
+        } else if(type == boolean.class) {
+            return new BooleanFieldAction(name, useDefaultValue, getter, setter);
+        }
+        return new ObjectFieldAction(name, useDefaultValue, getter, setter, NBTClassType.getType(type, clazz));
+    }
+
+    private static void makeAccessible(Field field) {
+        if(!field.isAccessible()) {
+            try {
+                Field modifiersField = Field.class.getDeclaredField("modifiers");
+                modifiersField.setAccessible(true);
+                modifiersField.setInt(field, field.getModifiers() & ~Modifier.FINAL);
+            } catch (NoSuchFieldException | IllegalAccessException e) {
+                e.printStackTrace();
+            }
+            field.setAccessible(true);
+        }
+    }
+
+    private static abstract class FieldAction {
+
+        protected final String name;
+        protected final boolean useDefaultValue;
+
+        protected FieldAction(String name, boolean useDefaultValue) {
+            this.name = name;
+            this.useDefaultValue = useDefaultValue;
+        }
+
+        public abstract void write(Object instance, NBTTagCompound tag) throws Throwable;
+        public abstract void read(Object instance, NBTTagCompound tag) throws Throwable;
+
+    }
+
+    private static class IntFieldAction extends FieldAction {
+
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        public IntFieldAction(String name, boolean useDefaultValue, MethodHandle getter, MethodHandle setter) {
+            super(name, useDefaultValue);
+            this.getter = getter.asType(MethodType.methodType(int.class, Object.class));
+            this.setter = setter.asType(MethodType.methodType(void.class, Object.class, int.class));
+        }
+
+        @Override
+        public void write(Object instance, NBTTagCompound tag) throws Throwable {
+            tag.setInteger(name, (int) getter.invokeExact(instance));
+        }
+
+        @Override
+        public void read(Object instance, NBTTagCompound tag) throws Throwable {
+            if(tag.hasKey(name)) {
+                setter.invokeExact(instance, tag.getInteger(name));
+            } else if(useDefaultValue) {
+                setter.invokeExact(instance, 0);
+            }
+        }
+    }
+
+    private static class FloatFieldAction extends FieldAction {
+
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        public FloatFieldAction(String name, boolean useDefaultValue, MethodHandle getter, MethodHandle setter) {
+            super(name, useDefaultValue);
+            this.getter = getter.asType(MethodType.methodType(float.class, Object.class));
+            this.setter = setter.asType(MethodType.methodType(void.class, Object.class, float.class));
+        }
+
+        @Override
+        public void write(Object instance, NBTTagCompound tag) throws Throwable {
+            tag.setFloat(name, (float) getter.invokeExact(instance));
+        }
+
+        @Override
+        public void read(Object instance, NBTTagCompound tag) throws Throwable {
+            if(tag.hasKey(name)) {
+                setter.invokeExact(instance, tag.getFloat(name));
+            } else if(useDefaultValue) {
+                setter.invokeExact(instance, 0F);
+            }
+        }
+    }
+
+    private static class BooleanFieldAction extends FieldAction {
+
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        public BooleanFieldAction(String name, boolean useDefaultValue, MethodHandle getter, MethodHandle setter) {
+            super(name, useDefaultValue);
+            this.getter = getter.asType(MethodType.methodType(boolean.class, Object.class));
+            this.setter = setter.asType(MethodType.methodType(void.class, Object.class, boolean.class));
+        }
+
+        @Override
+        public void write(Object instance, NBTTagCompound tag) throws Throwable {
+            tag.setBoolean(name, (boolean) getter.invokeExact(instance));
+        }
+
+        @Override
+        public void read(Object instance, NBTTagCompound tag) throws Throwable {
+            if(tag.hasKey(name)) {
+                setter.invokeExact(instance, tag.getBoolean(name));
+            } else if(useDefaultValue) {
+                setter.invokeExact(instance, false);
+            }
+        }
+    }
+
+    private static class ObjectFieldAction extends FieldAction {
+
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+        private final NBTClassType type;
+
+        public ObjectFieldAction(String name, boolean useDefaultValue, MethodHandle getter, MethodHandle setter,
+                                 NBTClassType type) {
+            super(name, useDefaultValue);
+            this.getter = getter.asType(MethodType.methodType(Object.class, Object.class));
+            this.setter = setter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+            this.type = type;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void write(Object instance, NBTTagCompound tag) throws Throwable {
+            Object object = (Object) getter.invokeExact(instance);
+            if(object != null) {
+                type.writePersistedField(name, object, tag);
+            }
+        }
+
+        @Override
+        public void read(Object instance, NBTTagCompound tag) throws Throwable {
+            if(tag.hasKey(name)) {
+                setter.invokeExact(instance, (Object) type.readPersistedField(name, tag));
+            } else if(useDefaultValue) {
+                setter.invokeExact(instance, (Object) type.getDefaultValue());
+            }
+        }
+    }
+
+}
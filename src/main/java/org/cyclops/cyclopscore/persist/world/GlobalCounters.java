@@ -1,19 +1,28 @@
 package org.cyclops.cyclopscore.persist.world;
 
 import com.google.common.collect.Maps;
+import net.minecraft.nbt.NBTTagCompound;
 import org.cyclops.cyclopscore.init.ModBase;
 import org.cyclops.cyclopscore.persist.nbt.NBTPersist;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Global counter that is shared over all dimensions, persisted, and consistent over server and clients.
+ * Counters can be incremented concurrently from any thread without locking.
  * @author rubensworks
  */
 public class GlobalCounters extends WorldStorage {
 
+    /**
+     * A snapshot of the counters, only used for persistence.
+     */
     @NBTPersist
     private Map<String, Integer> counters = Maps.newHashMap();
+    private final ConcurrentMap<String, AtomicInteger> liveCounters = new ConcurrentHashMap<>();
 
     public GlobalCounters(ModBase mod) {
         super(mod);
@@ -24,18 +33,57 @@ public class GlobalCounters extends WorldStorage {
      * @param key the key for the counter.
      * @return The next counter value.
      */
-    public synchronized int getNext(String key) {
-        int next = 0;
-        if(counters.containsKey(key)) {
-            next = counters.get(key);
+    public int getNext(String key) {
+        return reserveRange(key, 1);
+    }
+
+    /**
+     * Reserve a range of consecutive counter values for the given key.
+     * @param key the key for the counter.
+     * @param count The number of values to reserve, must be positive.
+     * @return The first reserved value, the range ends at this value plus the count, exclusive.
+     */
+    public int reserveRange(String key, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("The number of reserved counter values must be positive, got " + count);
+        }
+        AtomicInteger counter = liveCounters.get(key);
+        if (counter == null) {
+            counter = liveCounters.computeIfAbsent(key, k -> new AtomicInteger());
         }
-        counters.put(key, next + 1);
-        return next;
+        int first = counter.getAndAdd(count);
+        markDirty();
+        return first;
+    }
+
+    @Override
+    public void readFromNBT(NBTTagCompound tag) {
+        super.readFromNBT(tag);
+        liveCounters.clear();
+        for (Map.Entry<String, Integer> entry : counters.entrySet()) {
+            liveCounters.put(entry.getKey(), new AtomicInteger(entry.getValue()));
+        }
+    }
+
+    @Override
+    public void writeToNBT(NBTTagCompound tag) {
+        Map<String, Integer> snapshot = Maps.newHashMap();
+        for (Map.Entry<String, AtomicInteger> entry : liveCounters.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().get());
+        }
+        this.counters = snapshot;
+        super.writeToNBT(tag);
+    }
+
+    @Override
+    protected boolean isDirtyTracked() {
+        return true;
     }
 
     @Override
     public void reset() {
         counters.clear();
+        liveCounters.clear();
     }
 
     @Override
@@ -0,0 +1,230 @@
+package org.cyclops.cyclopscore.persist.world;
+
+import com.google.common.collect.Maps;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A file container for keyed NBT shards.
+ *
+ * Shards are compressed individually and appended to a data file.
+ * A separate index file maps each key to the offset and length of its latest record,
+ * and is replaced atomically after each write, so that a crash during a write leaves the previous state intact.
+ * Shards are only read when requested.
+ * When more than half of the data file is taken by outdated records,
+ * the live records are compacted into a new data file.
+ * @author rubensworks
+ */
+public class ShardContainer implements Closeable {
+
+    private static final int INDEX_VERSION = 1;
+    private static final long COMPACT_THRESHOLD = 1024 * 1024;
+
+    private final File directory;
+    private final File indexFile;
+    private int generation = 0;
+    private File dataFile;
+    private final int compressionLevel;
+    private final Map<String, Entry> index = Maps.newHashMap();
+    private RandomAccessFile data;
+    private long liveBytes = 0;
+
+    /**
+     * Open the container in the given directory, creating it if needed.
+     * @param directory The container directory.
+     * @param compressionLevel The deflate compression level for written shards.
+     * @throws IOException If the container could not be read.
+     */
+    public ShardContainer(File directory, int compressionLevel) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create the directory " + directory);
+        }
+        this.directory = directory;
+        this.indexFile = new File(directory, "shards.idx");
+        this.compressionLevel = compressionLevel;
+        readIndex();
+        this.dataFile = getDataFile(generation);
+        this.data = new RandomAccessFile(dataFile, "rw");
+    }
+
+    protected void readIndex() throws IOException {
+        if (indexFile.exists()) {
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+                int version = input.readInt();
+                if (version != INDEX_VERSION) {
+                    throw new IOException("Unsupported shard index version " + version + " in " + indexFile);
+                }
+                generation = input.readInt();
+                int count = input.readInt();
+                for (int i = 0; i < count; i++) {
+                    String key = input.readUTF();
+                    Entry entry = new Entry(input.readLong(), input.readInt());
+                    index.put(key, entry);
+                    liveBytes += entry.length;
+                }
+            }
+        }
+    }
+
+    protected void writeIndex() throws IOException {
+        File tempFile = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            output.writeInt(INDEX_VERSION);
+            output.writeInt(generation);
+            output.writeInt(index.size());
+            for (Map.Entry<String, Entry> entry : index.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeLong(entry.getValue().offset);
+                output.writeInt(entry.getValue().length);
+            }
+        }
+        WorldStorage.moveReplacing(tempFile, indexFile);
+    }
+
+    protected File getDataFile(int generation) {
+        return new File(directory, "shards-" + generation + ".dat");
+    }
+
+    /**
+     * @return The keys of all stored shards.
+     */
+    public synchronized Set<String> getKeys() {
+        return Collections.unmodifiableSet(Maps.newHashMap(index).keySet());
+    }
+
+    /**
+     * Read the shard with the given key.
+     * @param key The shard key.
+     * @return The shard, or null if it does not exist.
+     * @throws IOException If the shard could not be read.
+     */
+    public synchronized NBTTagCompound read(String key) throws IOException {
+        Entry entry = index.get(key);
+        if (entry == null) {
+            return null;
+        }
+        byte[] bytes = new byte[entry.length];
+        data.seek(entry.offset);
+        data.readFully(bytes);
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(new ByteArrayInputStream(bytes))))) {
+            return CompressedStreamTools.read(input);
+        }
+    }
+
+    /**
+     * Write the given shards.
+     * @param shards The shards to write, a null value removes the shard.
+     * @throws IOException If the shards could not be written.
+     */
+    public synchronized void write(Map<String, NBTTagCompound> shards) throws IOException {
+        long offset = data.length();
+        data.seek(offset);
+        for (Map.Entry<String, NBTTagCompound> shard : shards.entrySet()) {
+            Entry oldEntry;
+            if (shard.getValue() == null) {
+                oldEntry = index.remove(shard.getKey());
+            } else {
+                byte[] bytes = compress(shard.getValue());
+                data.write(bytes);
+                oldEntry = index.put(shard.getKey(), new Entry(offset, bytes.length));
+                offset += bytes.length;
+                liveBytes += bytes.length;
+            }
+            if (oldEntry != null) {
+                liveBytes -= oldEntry.length;
+            }
+        }
+        // Make sure that the records are persisted before the index refers to them.
+        data.getFD().sync();
+        writeIndex();
+        if (offset > COMPACT_THRESHOLD && liveBytes < offset / 2) {
+            compact();
+        }
+    }
+
+    protected byte[] compress(NBTTagCompound tag) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(compressionLevel);
+        try (DataOutputStream output = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            CompressedStreamTools.write(tag, output);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Rewrite the live records into a data file of the next generation.
+     * The index is switched to the new data file atomically, after which the old data file is deleted.
+     * @throws IOException If the data file could not be rewritten.
+     */
+    protected synchronized void compact() throws IOException {
+        File newDataFile = getDataFile(generation + 1);
+        Map<String, Entry> newIndex = Maps.newHashMap();
+        RandomAccessFile newData = new RandomAccessFile(newDataFile, "rw");
+        try {
+            newData.setLength(0);
+            long offset = 0;
+            for (Map.Entry<String, Entry> entry : index.entrySet()) {
+                byte[] bytes = new byte[entry.getValue().length];
+                data.seek(entry.getValue().offset);
+                data.readFully(bytes);
+                newData.write(bytes);
+                newIndex.put(entry.getKey(), new Entry(offset, bytes.length));
+                offset += bytes.length;
+            }
+            newData.getFD().sync();
+        } catch (IOException e) {
+            newData.close();
+            throw e;
+        }
+        File oldDataFile = dataFile;
+        data.close();
+        data = newData;
+        dataFile = newDataFile;
+        generation++;
+        index.clear();
+        index.putAll(newIndex);
+        writeIndex();
+        if (!oldDataFile.delete()) {
+            oldDataFile.deleteOnExit();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        data.close();
+    }
+
+    private static class Entry {
+
+        private final long offset;
+        private final int length;
+
+        public Entry(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+}
@@ -0,0 +1,228 @@
+package org.cyclops.cyclopscore.persist.world;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.world.WorldServer;
+import net.minecraftforge.fml.common.FMLCommonHandler;
+import net.minecraftforge.fml.common.event.FMLServerStartedEvent;
+import org.apache.logging.log4j.Level;
+import org.cyclops.cyclopscore.GeneralConfig;
+import org.cyclops.cyclopscore.init.ModBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A world storage that can additionally store large amounts of data in keyed shards.
+ *
+ * Shards are stored in a {@link ShardContainer} next to the regular world storage data.
+ * They are only read when they are first accessed, and only changed shards are written when the world is saved.
+ * Subclasses must call {@link #markShardDirty(String)} after modifying a shard.
+ * Shards that have not been accessed or changed since the previous world save are unloaded again when the world is saved,
+ * so references to shards must not be kept across world saves.
+ * If a shard can not be read, it is never overwritten, unless it is explicitly replaced or removed.
+ * Fields annotated with {@link org.cyclops.cyclopscore.persist.nbt.NBTPersist} are still stored
+ * like in a regular {@link WorldStorage}.
+ * @author rubensworks
+ */
+public abstract class ShardedWorldStorage extends WorldStorage {
+
+    private ShardContainer container = null;
+    private final Set<String> shardKeys = Sets.newHashSet();
+    private final Map<String, NBTTagCompound> loadedShards = Maps.newHashMap();
+    private final Set<String> dirtyShards = Sets.newHashSet();
+    private final Set<String> accessedShards = Sets.newHashSet();
+    private final Set<String> failedShards = Sets.newHashSet();
+
+    public ShardedWorldStorage(ModBase mod) {
+        super(mod);
+    }
+
+    /**
+     * @return The deflate compression level for shards.
+     */
+    protected int getCompressionLevel() {
+        return GeneralConfig.worldStorageCompressionLevel;
+    }
+
+    @Override
+    public void onStartedEvent(FMLServerStartedEvent event) {
+        openContainer(FMLCommonHandler.instance().getMinecraftServerInstance().worlds[0]);
+        super.onStartedEvent(event);
+    }
+
+    protected synchronized void openContainer(WorldServer world) {
+        closeContainer();
+        File directory = new File(world.getSaveHandler().getWorldDirectory(),
+                "data" + File.separator + mod.getModId() + "_" + getDataId() + ".shards");
+        try {
+            container = new ShardContainer(directory, getCompressionLevel());
+            shardKeys.addAll(container.getKeys());
+        } catch (IOException e) {
+            mod.log(Level.ERROR, String.format("Could not open the world storage shards at %s: %s",
+                    directory, e.getMessage()));
+            e.printStackTrace();
+        }
+    }
+
+    protected synchronized void closeContainer() {
+        if (container != null) {
+            try {
+                container.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            container = null;
+        }
+        shardKeys.clear();
+        loadedShards.clear();
+        dirtyShards.clear();
+        accessedShards.clear();
+        failedShards.clear();
+    }
+
+    /**
+     * @return The keys of all shards.
+     */
+    public synchronized Set<String> getShardKeys() {
+        return Collections.unmodifiableSet(Sets.newHashSet(shardKeys));
+    }
+
+    /**
+     * Get the shard with the given key, loading it if needed.
+     * If the shard could not be read, this returns null, and reading is attempted again on the next call.
+     * @param key The shard key.
+     * @return The shard, or null if it does not exist or could not be read.
+     */
+    protected synchronized NBTTagCompound getShard(String key) {
+        NBTTagCompound shard = loadedShards.get(key);
+        if (shard == null && container != null && shardKeys.contains(key)) {
+            try {
+                shard = container.read(key);
+                failedShards.remove(key);
+            } catch (IOException e) {
+                failedShards.add(key);
+                mod.log(Level.ERROR, String.format("Could not read the world storage shard %s: %s",
+                        key, e.getMessage()));
+                e.printStackTrace();
+            }
+            if (shard != null) {
+                loadedShards.put(key, shard);
+            }
+        }
+        if (shard != null) {
+            accessedShards.add(key);
+        }
+        return shard;
+    }
+
+    /**
+     * @param key The shard key.
+     * @return If the shard with the given key exists, but could not be read.
+     */
+    public synchronized boolean isShardFailed(String key) {
+        return failedShards.contains(key);
+    }
+
+    /**
+     * Get the shard with the given key, or create a new empty shard.
+     * @param key The shard key.
+     * @return The shard.
+     * @throws IllegalStateException If the shard exists, but could not be read.
+     */
+    protected synchronized NBTTagCompound getOrCreateShard(String key) {
+        NBTTagCompound shard = getShard(key);
+        if (shard == null && failedShards.contains(key)) {
+            throw new IllegalStateException(String.format("The world storage shard %s of %s could not be read, " +
+                    "and will not be replaced by an empty shard.", key, getDataId()));
+        }
+        if (shard == null) {
+            shard = new NBTTagCompound();
+            setShard(key, shard);
+        }
+        return shard;
+    }
+
+    /**
+     * Set the shard with the given key.
+     * @param key The shard key.
+     * @param shard The new shard.
+     */
+    protected synchronized void setShard(String key, NBTTagCompound shard) {
+        failedShards.remove(key);
+        loadedShards.put(key, shard);
+        shardKeys.add(key);
+        markShardDirty(key);
+    }
+
+    /**
+     * Remove the shard with the given key.
+     * @param key The shard key.
+     */
+    protected synchronized void removeShard(String key) {
+        if (shardKeys.remove(key)) {
+            failedShards.remove(key);
+            loadedShards.remove(key);
+            markShardDirty(key);
+        }
+    }
+
+    /**
+     * Mark the shard with the given key as changed, so that it will be written at the next world save.
+     * @param key The shard key.
+     */
+    protected synchronized void markShardDirty(String key) {
+        dirtyShards.add(key);
+        accessedShards.add(key);
+    }
+
+    @Override
+    protected synchronized void writeData(WorldServer world) {
+        super.writeData(world);
+        if (container == null || !isLoaded()) {
+            return;
+        }
+        // Unload the clean shards that were not used since the previous save.
+        loadedShards.keySet().removeIf(key -> !accessedShards.contains(key) && !dirtyShards.contains(key));
+        accessedShards.clear();
+        if (dirtyShards.isEmpty()) {
+            return;
+        }
+        // Copy the changed shards, as they may be modified on the server thread during writing.
+        Map<String, NBTTagCompound> snapshot = Maps.newHashMapWithExpectedSize(dirtyShards.size());
+        for (String key : dirtyShards) {
+            NBTTagCompound shard = loadedShards.get(key);
+            if (shard != null) {
+                snapshot.put(key, shard.copy());
+            } else if (!shardKeys.contains(key)) {
+                // Removed shard
+                snapshot.put(key, null);
+            } else if (failedShards.contains(key)) {
+                mod.log(Level.WARN, String.format("Skipped writing the unreadable world storage shard %s of %s.",
+                        key, getDataId()));
+            }
+        }
+        dirtyShards.clear();
+        final ShardContainer container = this.container;
+        submitWrite(() -> {
+            try {
+                container.write(snapshot);
+            } catch (IOException e) {
+                mod.log(Level.ERROR, String.format("Could not write the world storage shards of %s: %s",
+                        getDataId(), e.getMessage()));
+                e.printStackTrace();
+            }
+        });
+    }
+
+    @Override
+    protected synchronized void onUnload() {
+        super.onUnload();
+        closeContainer();
+    }
+
+}
@@ -1,32 +1,86 @@
 package org.cyclops.cyclopscore.persist.world;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.experimental.Delegate;
+import net.minecraft.nbt.CompressedStreamTools;
 import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
 import net.minecraft.world.storage.WorldSavedData;
+import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.fml.common.FMLCommonHandler;
 import net.minecraftforge.fml.common.event.FMLServerAboutToStartEvent;
 import net.minecraftforge.fml.common.event.FMLServerStartedEvent;
 import net.minecraftforge.fml.common.event.FMLServerStoppingEvent;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import org.apache.logging.log4j.Level;
 import org.cyclops.cyclopscore.init.ModBase;
 import org.cyclops.cyclopscore.persist.nbt.INBTProvider;
 import org.cyclops.cyclopscore.persist.nbt.NBTProviderComponent;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 /**
  * Instances of this can store data inside the world NBT.
+ *
+ * The data is written when the overworld is saved.
+ * A snapshot of the data is taken on the server thread,
+ * while the compression and file writing happen on a background thread.
+ * Storages that call {@link #markDirty()} on each modification can enable dirty tracking
+ * with {@link #isDirtyTracked()}, so that they are only written when they have changed.
+ * World events are received after the storage is registered with {@link ModBase#registerWorldStorage(WorldStorage)}.
  * @author rubensworks
  */
 public abstract class WorldStorage implements INBTProvider {
 
     private static String KEY = "WorldStorageData";
+    private static final ExecutorService IO_EXECUTOR = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("WorldStorage IO").setDaemon(true).build());
 
     protected final ModBase mod;
     @Delegate
     private INBTProvider nbtProviderComponent = new NBTProviderComponent(this);
+    private volatile boolean dirty = false;
+    private NBTDataHolder dataHolder = null;
+    private Future<?> lastWrite = null;
 
     public WorldStorage(ModBase mod) {
         this.mod = mod;
     }
 
+    /**
+     * Mark this storage as changed, so that it will be written at the next world save.
+     */
+    public void markDirty() {
+        this.dirty = true;
+    }
+
+    /**
+     * @return If this storage must be written at the next world save.
+     */
+    public boolean isDirty() {
+        return !isDirtyTracked() || dirty;
+    }
+
+    /**
+     * If this storage calls {@link #markDirty()} on each modification.
+     * If not, this storage is written at each world save.
+     * @return If dirty tracking is enabled.
+     */
+    protected boolean isDirtyTracked() {
+        return false;
+    }
+
     /**
      * Read the counters.
      * @param tag The tag to read from.
@@ -53,6 +107,9 @@ public abstract class WorldStorage implements INBTProvider {
      * @param event The received event.
      */
     public void onAboutToStartEvent(FMLServerAboutToStartEvent event) {
+        synchronized (this) {
+            this.dataHolder = null;
+        }
         reset();
     }
 
@@ -64,6 +121,7 @@ public abstract class WorldStorage implements INBTProvider {
         reset();
         loadData();
         afterLoad();
+        this.dirty = false;
     }
 
     /**
@@ -95,11 +153,121 @@ public abstract class WorldStorage implements INBTProvider {
     }
 
     private synchronized void loadData() {
-        initDataHolder(true);
+        // Make sure that the data of a previous server has been fully written.
+        waitForWrite();
+        this.dataHolder = initDataHolder(true);
     }
 
     private synchronized void saveData() {
-        initDataHolder(false);
+        this.dataHolder = initDataHolder(false);
+    }
+
+    /**
+     * Take a snapshot of this storage, and write it to the world in the background.
+     * @param world The overworld.
+     */
+    protected synchronized void writeData(WorldServer world) {
+        if (dataHolder == null || !isDirty()) {
+            return;
+        }
+        File file = world.getSaveHandler().getMapFileFromName(dataHolder.mapName);
+        if (file == null) {
+            return;
+        }
+        this.dirty = false;
+        NBTTagCompound dataTag = new NBTTagCompound();
+        writeToNBT(dataTag);
+        // Copy, because tags of fields may be referred to directly.
+        NBTTagCompound holderTag = new NBTTagCompound();
+        holderTag.setTag(KEY, dataTag.copy());
+        final NBTTagCompound rootTag = new NBTTagCompound();
+        rootTag.setTag("data", holderTag);
+        final String name = dataHolder.mapName;
+        submitWrite(() -> {
+            try {
+                File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+                try (OutputStream outputStream = new FileOutputStream(tempFile)) {
+                    CompressedStreamTools.writeCompressed(rootTag, outputStream);
+                }
+                moveReplacing(tempFile, file);
+            } catch (IOException e) {
+                mod.log(Level.ERROR, String.format("Could not write world storage %s: %s", name, e.getMessage()));
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Move the given file over the target file, atomically if the file system supports it.
+     * @param source The file to move.
+     * @param target The file to replace.
+     * @throws IOException If the file could not be moved.
+     */
+    protected static void moveReplacing(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Run the given write task on the background I/O thread.
+     * Tasks are run in submission order, and must only use data that is not modified on the server thread.
+     * @param task The write task.
+     */
+    protected synchronized void submitWrite(Runnable task) {
+        this.lastWrite = IO_EXECUTOR.submit(task);
+    }
+
+    /**
+     * @return If this storage has been loaded for the running server.
+     */
+    protected synchronized boolean isLoaded() {
+        return dataHolder != null;
+    }
+
+    /**
+     * Called when the overworld is unloaded, after all background writes have finished.
+     */
+    protected void onUnload() {
+
+    }
+
+    /**
+     * Wait until the last background write of this storage has finished.
+     */
+    protected void waitForWrite() {
+        Future<?> lastWrite = this.lastWrite;
+        if (lastWrite != null) {
+            try {
+                lastWrite.get();
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+            }
+            this.lastWrite = null;
+        }
+    }
+
+    @SubscribeEvent
+    public void onWorldSave(WorldEvent.Save event) {
+        World world = event.getWorld();
+        if (!world.isRemote && world.provider.getDimension() == 0 && world instanceof WorldServer) {
+            writeData((WorldServer) world);
+        }
+    }
+
+    @SubscribeEvent
+    public void onWorldUnload(WorldEvent.Unload event) {
+        World world = event.getWorld();
+        if (!world.isRemote && world.provider.getDimension() == 0) {
+            // The server may exit right after unloading, so finish writing first.
+            waitForWrite();
+            synchronized (this) {
+                this.dataHolder = null;
+            }
+            onUnload();
+        }
     }
 
     /**
@@ -151,8 +319,8 @@ public abstract class WorldStorage implements INBTProvider {
 
         @Override
         public boolean isDirty() {
-            // If this proves to be too inefficient, add a decent implementation for this.
-            return true;
+            // The parent storage writes itself in the background when the world is saved.
+            return false;
         }
 
         public void setParentStorage(WorldStorage parentStorage) {
@@ -1,13 +1,18 @@
 package org.cyclops.cyclopscore.proxy;
 
+import net.minecraftforge.common.MinecraftForge;
 import org.cyclops.cyclopscore.CyclopsCore;
 import org.cyclops.cyclopscore.init.ModBase;
+import org.cyclops.cyclopscore.inventory.DirtyNotificationScheduler;
 import org.cyclops.cyclopscore.network.PacketHandler;
 import org.cyclops.cyclopscore.network.packet.*;
 import org.cyclops.cyclopscore.network.packet.debug.PingPongPacketAsync;
 import org.cyclops.cyclopscore.network.packet.debug.PingPongPacketComplexAsync;
 import org.cyclops.cyclopscore.network.packet.debug.PingPongPacketComplexSync;
 import org.cyclops.cyclopscore.network.packet.debug.PingPongPacketSync;
+import org.cyclops.cyclopscore.tileentity.TileSleepScheduler;
+import org.cyclops.cyclopscore.tileentity.TileTickWheels;
+import org.cyclops.cyclopscore.tileentity.TileUpdateScheduler;
 
 /**
  * Proxy for server and client side.
@@ -35,6 +40,8 @@ public class CommonProxy extends CommonProxyComponent {
         packetHandler.register(SendPlayerNbtPacket.class);
         packetHandler.register(RequestPlayerAdvancementUnlockedPacket.class);
         packetHandler.register(SendPlayerAdvancementUnlockedPacket.class);
+        packetHandler.register(TileDeltaSyncPacket.class);
+        packetHandler.register(TileUpdateBatchPacket.class);
 
         // Register debug packets
         packetHandler.register(PingPongPacketAsync.class);
@@ -43,4 +50,13 @@ public class CommonProxy extends CommonProxyComponent {
         packetHandler.register(PingPongPacketComplexSync.class);
     }
 
+    @Override
+    public void registerEventHooks() {
+        super.registerEventHooks();
+        MinecraftForge.EVENT_BUS.register(new TileUpdateScheduler.EventListener());
+        MinecraftForge.EVENT_BUS.register(new DirtyNotificationScheduler.EventListener());
+        MinecraftForge.EVENT_BUS.register(new TileTickWheels.EventListener());
+        MinecraftForge.EVENT_BUS.register(new TileSleepScheduler.EventListener());
+    }
+
 }
@@ -1,10 +1,23 @@
 package org.cyclops.cyclopscore.recipe.custom;
 
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.crafting.Ingredient;
+import net.minecraftforge.fluids.FluidStack;
 import org.cyclops.cyclopscore.init.ModBase;
 import org.cyclops.cyclopscore.recipe.custom.api.*;
+import org.cyclops.cyclopscore.recipe.custom.component.FluidStackRecipeComponent;
+import org.cyclops.cyclopscore.recipe.custom.component.IngredientAndFluidStackRecipeComponent;
+import org.cyclops.cyclopscore.recipe.custom.component.IngredientRecipeComponent;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Default implementation of {@link IRecipeRegistry}.
@@ -20,6 +33,7 @@ public class RecipeRegistry<M extends IMachine<M, I, O, P>, I extends IRecipeInp
 	
     private final M machine;
     private final ModBase mod;
+    private volatile InputIndex inputIndex = null;
 
     /**
      * Make a new instance.
@@ -33,7 +47,8 @@ public class RecipeRegistry<M extends IMachine<M, I, O, P>, I extends IRecipeInp
 
     @Override
 	public IRecipe<I, O, P> registerRecipe(IRecipe<I, O, P> recipe) {
-        getMod().getRegistryManager().getRegistry(ISuperRecipeRegistry.class).getRecipes(machine).add(recipe);
+        getRecipeList().add(recipe);
+        invalidateInputIndex();
         return recipe;
     }
 
@@ -49,7 +64,8 @@ public class RecipeRegistry<M extends IMachine<M, I, O, P>, I extends IRecipeInp
 
     @Override
     public IRecipe<I, O, P> unregisterRecipe(IRecipe<I, O, P> recipe) {
-        if (getMod().getRegistryManager().getRegistry(ISuperRecipeRegistry.class).getRecipes(machine).remove(recipe)) {
+        if (getRecipeList().remove(recipe)) {
+            invalidateInputIndex();
             return recipe;
         }
         return null;
@@ -76,25 +92,62 @@ public class RecipeRegistry<M extends IMachine<M, I, O, P>, I extends IRecipeInp
     }
 
     @Override
+    @SuppressWarnings({ "rawtypes", "unchecked" })
     public IRecipe<I, O, P> findRecipeByInput(I input) {
-        return findRecipe(new RecipePropertyMatcher<M, IRecipe<I, O, P>, I>(input) {
+        List<IRecipe> recipes = getRecipeList();
+        BitSet[] candidates = getInputCandidates(recipes, input);
+        if (candidates == null) {
+            return findRecipe(createInputMatcher(input));
+        }
+        for (int i = nextCandidate(candidates, 0); i >= 0; i = nextCandidate(candidates, i + 1)) {
+            IRecipe<I, O, P> recipe = recipes.get(i);
+            if (recipe.getInput().equals(input))
+                return recipe;
+        }
 
-            @Override
-            public I getProperty(M machine, IRecipe<I, O, P> recipe) {
-                return recipe.getInput();
-            }
-        });
+        return null;
     }
 
     @Override
+    public IRecipe<I, O, P> findRecipeByInput(I input, RecipeCache<I, O, P> cache) {
+        int generation = getGeneration();
+        IRecipe<I, O, P> recipe = cache.getRecipe(this, generation);
+        if (recipe != null && recipe.getInput().equals(input)) {
+            cache.onHit();
+            return recipe;
+        }
+        cache.onMiss();
+        recipe = findRecipeByInput(input);
+        cache.setRecipe(this, generation, recipe);
+        return recipe;
+    }
+
+    @Override
+    @SuppressWarnings({ "rawtypes", "unchecked" })
     public List<IRecipe<I, O, P>> findRecipesByInput(I input) {
-        return findRecipes(new RecipePropertyMatcher<M, IRecipe<I, O, P>, I>(input) {
+        List<IRecipe> recipes = getRecipeList();
+        BitSet[] candidates = getInputCandidates(recipes, input);
+        if (candidates == null) {
+            return findRecipes(createInputMatcher(input));
+        }
+        List<IRecipe<I, O, P>> results = new ArrayList<IRecipe<I, O, P>>();
+        for (int i = nextCandidate(candidates, 0); i >= 0; i = nextCandidate(candidates, i + 1)) {
+            IRecipe<I, O, P> recipe = recipes.get(i);
+            if (recipe.getInput().equals(input))
+                results.add(recipe);
+        }
+
+        return results;
+    }
+
+    protected IRecipeMatcher<M, IRecipe<I, O, P>> createInputMatcher(I input) {
+        return new RecipePropertyMatcher<M, IRecipe<I, O, P>, I>(input) {
 
             @Override
             public I getProperty(M machine, IRecipe<I, O, P> recipe) {
                 return recipe.getInput();
             }
-        });
+        };
     }
 
     @Override
@@ -122,7 +175,7 @@ public class RecipeRegistry<M extends IMachine<M, I, O, P>, I extends IRecipeInp
     @Override
     @SuppressWarnings({ "rawtypes", "unchecked" })
     public IRecipe<I, O, P> findRecipe(IRecipeMatcher<M, IRecipe<I, O, P>> recipeMatcher) {
-        for (IRecipe r : getMod().getRegistryManager().getRegistry(ISuperRecipeRegistry.class).getRecipes(machine)) {
+        for (IRecipe r : getRecipeList()) {
             IRecipe<I, O, P> recipe = r;
             if (recipeMatcher.matches(machine, recipe))
                 return recipe;
@@ -136,7 +189,7 @@ public class RecipeRegistry<M extends IMachine<M, I, O, P>, I extends IRecipeInp
     public List<IRecipe<I, O, P>> findRecipes(IRecipeMatcher<M, IRecipe<I, O, P>> recipeMatcher) {
         List<IRecipe<I, O, P>> results = new ArrayList<IRecipe<I, O, P>>();
 
-        for (IRecipe r : getMod().getRegistryManager().getRegistry(ISuperRecipeRegistry.class).getRecipes(machine)) {
+        for (IRecipe r : getRecipeList()) {
             IRecipe<I, O, P> recipe = r;
             if (recipeMatcher.matches(machine, recipe))
                 results.add(recipe);
@@ -147,11 +200,165 @@ public class RecipeRegistry<M extends IMachine<M, I, O, P>, I extends IRecipeInp
 
     @Override
     public List<IRecipe<I, O, P>> allRecipes() {
-        return (List) getMod().getRegistryManager().getRegistry(ISuperRecipeRegistry.class).getRecipes(machine);
+        return (List) getRecipeList();
+    }
+
+    @Override
+    public int getGeneration() {
+        List<IRecipe> recipes = getRecipeList();
+        if (recipes instanceof SuperRecipeRegistry.RecipeList) {
+            return ((SuperRecipeRegistry.RecipeList) recipes).getGeneration();
+        }
+        return -1;
     }
 
     @Override
     public ModBase getMod() {
         return this.mod;
     }
+
+    /**
+     * @return The recipe list of this machine in the super recipe registry.
+     */
+    @SuppressWarnings("rawtypes")
+    protected List<IRecipe> getRecipeList() {
+        return getMod().getRegistryManager().getRegistry(ISuperRecipeRegistry.class).getRecipes(machine);
+    }
+
+    /**
+     * Invalidate the input index of this registry, it will be rebuilt at the next lookup.
+     * This is done automatically when recipes are (un)registered, or when the recipe list is modified directly.
+     */
+    public void invalidateInputIndex() {
+        this.inputIndex = null;
+    }
+
+    /**
+     * Get the positions of all recipes in the given list that may have an input that matches the given input.
+     * The returned sets are owned by the index and must not be modified,
+     * use {@link #nextCandidate(BitSet[], int)} to iterate over their union.
+     * @param recipes The recipes of this machine.
+     * @param input The input to look up.
+     * @return The sets of candidate positions, or null if the input can not be looked up in the index.
+     *         Recipes with inputs that can not be indexed are always included.
+     */
+    @SuppressWarnings("rawtypes")
+    protected BitSet[] getInputCandidates(List<IRecipe> recipes, IRecipeInput input) {
+        Collection<Object> keys = getInputIndexKeys(input);
+        // Only lists that track their modifications can be indexed safely.
+        if (keys == null || !(recipes instanceof SuperRecipeRegistry.RecipeList)) {
+            return null;
+        }
+        InputIndex index = this.inputIndex;
+        int generation = ((SuperRecipeRegistry.RecipeList) recipes).getGeneration();
+        if (index == null || index.generation != generation || index.size != recipes.size()) {
+            index = new InputIndex(recipes, generation);
+            this.inputIndex = index;
+        }
+        BitSet[] candidates = new BitSet[keys.size() + 1];
+        int count = 0;
+        candidates[count++] = index.unindexed;
+        for (Object key : keys) {
+            BitSet positions = index.positions.get(key);
+            if (positions != null) {
+                candidates[count++] = positions;
+            }
+        }
+        return count == candidates.length ? candidates : Arrays.copyOf(candidates, count);
+    }
+
+    /**
+     * Get the next position in the union of the given sets, without copying them.
+     * @param candidates Sets of positions.
+     * @param fromIndex The position to start from, inclusive.
+     * @return The lowest position in any of the sets starting from the given position, or -1 if there is none.
+     */
+    protected static int nextCandidate(BitSet[] candidates, int fromIndex) {
+        int next = -1;
+        for (BitSet positions : candidates) {
+            int position = positions.nextSetBit(fromIndex);
+            if (position >= 0 && (next < 0 || position < next)) {
+                next = position;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Get the keys under which the given recipe input is indexed.
+     * Two inputs can only be equal if they share at least one key.
+     * Items are used as keys for ingredient inputs, and fluids for fluid inputs.
+     * @param input A recipe input.
+     * @return The keys, or null if the input can not be indexed.
+     */
+    protected static Collection<Object> getInputIndexKeys(IRecipeInput input) {
+        if (input == null) {
+            return null;
+        }
+        // Only the exact component classes are indexed, subclasses may override the equality logic.
+        Class<?> clazz = input.getClass();
+        if (clazz == IngredientRecipeComponent.class || clazz == IngredientAndFluidStackRecipeComponent.class) {
+            return getIngredientIndexKeys(((IIngredientRecipeComponent) input).getIngredient());
+        }
+        if (clazz == FluidStackRecipeComponent.class) {
+            FluidStack fluidStack = ((FluidStackRecipeComponent) input).getFluidStack();
+            if (fluidStack == null || fluidStack.getFluid() == null) {
+                return null;
+            }
+            return Sets.newHashSet(fluidStack.getFluid());
+        }
+        return null;
+    }
+
+    protected static Collection<Object> getIngredientIndexKeys(Ingredient ingredient) {
+        // Other ingredient types may accept stacks that are not part of their matching stacks.
+        // This includes ore dictionary ingredients, as ores can still be registered after the index was built.
+        if (ingredient.getClass() != Ingredient.class) {
+            return null;
+        }
+        ItemStack[] itemStacks = ingredient.getMatchingStacks();
+        if (itemStacks.length == 0) {
+            return null;
+        }
+        Set<Object> keys = Sets.newHashSet();
+        for (ItemStack itemStack : itemStacks) {
+            if (itemStack.isEmpty()) {
+                return null;
+            }
+            keys.add(itemStack.getItem());
+        }
+        return keys;
+    }
+
+    /**
+     * An index from input keys to the positions of recipes in the recipe list of a machine.
+     */
+    private static class InputIndex {
+
+        private final int generation;
+        private final int size;
+        private final Map<Object, BitSet> positions = Maps.newHashMap();
+        private final BitSet unindexed = new BitSet();
+
+        @SuppressWarnings("rawtypes")
+        public InputIndex(List<IRecipe> recipes, int generation) {
+            this.generation = generation;
+            this.size = recipes.size();
+            for (int i = 0; i < recipes.size(); i++) {
+                Collection<Object> keys = getInputIndexKeys(recipes.get(i).getInput());
+                if (keys == null) {
+                    unindexed.set(i);
+                } else {
+                    for (Object key : keys) {
+                        BitSet keyPositions = positions.get(key);
+                        if (keyPositions == null) {
+                            keyPositions = new BitSet();
+                            positions.put(key, keyPositions);
+                        }
+                        keyPositions.set(i);
+                    }
+                }
+            }
+        }
+    }
 }
\ No newline at end of file
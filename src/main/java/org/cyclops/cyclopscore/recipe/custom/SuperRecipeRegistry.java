@@ -45,7 +45,7 @@ public class SuperRecipeRegistry implements ISuperRecipeRegistry {
     public List<IRecipe> getRecipes(IMachine machine) {
         List<IRecipe> list = recipes.get(machine);
         if (list == null) {
-            list = new ArrayList<IRecipe>();
+            list = new RecipeList();
             recipes.put(machine, list);
         }
         return list;
@@ -113,5 +113,25 @@ public class SuperRecipeRegistry implements ISuperRecipeRegistry {
 
         return results;
     }
+
+    /**
+     * A list of recipes that keeps track of its modifications,
+     * so that indexes over it can be invalidated when recipes are added or removed directly through the list.
+     */
+    public static class RecipeList extends ArrayList<IRecipe> {
+
+        /**
+         * @return A counter that changes each time this list is modified.
+         */
+        public int getGeneration() {
+            return modCount;
+        }
+
+        @Override
+        public IRecipe set(int index, IRecipe element) {
+            modCount++;
+            return super.set(index, element);
+        }
+    }
     
 }
@@ -80,6 +80,20 @@ public interface IRecipeRegistry<M extends IMachine<M, I, O, P>, I extends IReci
      * @return The first recipe whose input matches, or null if no match was found.
      */
     public IRecipe<I, O, P> findRecipeByInput(I input);
+
+    /**
+     * Returns the first recipe whose input matches the given recipe input.
+     * The recipe that is remembered in the given cache is checked first,
+     * and the cache is updated after a full lookup.
+     * So if multiple recipes match the given input, the remembered recipe takes priority.
+     * By default, the cache is ignored and {@link IRecipeRegistry#findRecipeByInput(IRecipeInput)} is called.
+     * @param input The input of the recipe.
+     * @param cache A cache that is owned by the caller.
+     * @return The first recipe whose input matches, or null if no match was found.
+     */
+    public default IRecipe<I, O, P> findRecipeByInput(I input, RecipeCache<I, O, P> cache) {
+        return findRecipeByInput(input);
+    }
     
     /**
      * Returns a list of recipes whose input match the given recipe input.
@@ -122,6 +136,14 @@ public interface IRecipeRegistry<M extends IMachine<M, I, O, P>, I extends IReci
      */
     public List<IRecipe<I, O, P>> allRecipes();
 
+    /**
+     * @return A counter that changes each time recipes are added to or removed from this registry,
+     *         or -1 if changes can not be tracked, which is the default.
+     */
+    public default int getGeneration() {
+        return -1;
+    }
+
     /**
      * @return The base mod for this registry.
      */
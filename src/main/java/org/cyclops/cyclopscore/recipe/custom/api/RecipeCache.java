@@ -0,0 +1,91 @@
+package org.cyclops.cyclopscore.recipe.custom.api;
+
+import lombok.Getter;
+
+/**
+ * A caller-owned cache that remembers the last recipe that was found for an input,
+ * to be used with {@link IRecipeRegistry#findRecipeByInput(IRecipeInput, RecipeCache)}.
+ *
+ * A machine will typically keep one instance of this cache, so that looking up the same recipe
+ * tick after tick only needs to recheck the remembered recipe.
+ * The remembered recipe is forgotten when the registry changes.
+ * This class is not thread-safe.
+ * @param <I> The type of the recipe input.
+ * @param <O> The type of the recipe output.
+ * @param <P> The type of the recipe properties.
+ * @author rubensworks
+ */
+public class RecipeCache<I extends IRecipeInput, O extends IRecipeOutput, P extends IRecipeProperties> {
+
+    private IRecipeRegistry<?, I, O, P> registry = null;
+    private int generation = -1;
+    private IRecipe<I, O, P> recipe = null;
+
+    /**
+     * The number of lookups that were answered by the remembered recipe.
+     */
+    @Getter
+    private long hits = 0;
+    /**
+     * The number of lookups that required a registry lookup.
+     */
+    @Getter
+    private long misses = 0;
+
+    /**
+     * Get the remembered recipe if it is still valid for the given registry.
+     * @param registry The registry that is being looked up.
+     * @param generation The current generation of the registry.
+     * @return The remembered recipe, or null.
+     */
+    public IRecipe<I, O, P> getRecipe(IRecipeRegistry<?, I, O, P> registry, int generation) {
+        if (this.registry == registry && this.generation == generation && generation >= 0) {
+            return this.recipe;
+        }
+        return null;
+    }
+
+    /**
+     * Remember the given recipe.
+     * @param registry The registry in which the recipe was found.
+     * @param generation The generation of the registry at the time of lookup.
+     * @param recipe The found recipe, can be null.
+     */
+    public void setRecipe(IRecipeRegistry<?, I, O, P> registry, int generation, IRecipe<I, O, P> recipe) {
+        this.registry = registry;
+        this.generation = generation;
+        this.recipe = recipe;
+    }
+
+    /**
+     * Forget the remembered recipe.
+     */
+    public void invalidate() {
+        this.registry = null;
+        this.generation = -1;
+        this.recipe = null;
+    }
+
+    /**
+     * Count a lookup that was answered by the remembered recipe.
+     */
+    public void onHit() {
+        hits++;
+    }
+
+    /**
+     * Count a lookup that required a registry lookup.
+     */
+    public void onMiss() {
+        misses++;
+    }
+
+    /**
+     * Reset the hit and miss counters.
+     */
+    public void resetCounters() {
+        hits = 0;
+        misses = 0;
+    }
+
+}
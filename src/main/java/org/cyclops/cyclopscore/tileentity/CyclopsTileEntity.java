@@ -13,17 +13,24 @@ import net.minecraft.util.EnumFacing;
 import net.minecraft.util.ITickable;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
 import net.minecraftforge.common.capabilities.Capability;
 import org.apache.commons.lang3.tuple.Pair;
+import org.cyclops.cyclopscore.CyclopsCore;
+import org.cyclops.cyclopscore.GeneralConfig;
 import org.cyclops.cyclopscore.config.configurable.ConfigurableBlockContainer;
+import org.cyclops.cyclopscore.datastructure.TickWheel;
 import org.cyclops.cyclopscore.helper.BlockHelpers;
 import org.cyclops.cyclopscore.helper.DirectionHelpers;
+import org.cyclops.cyclopscore.helper.NBTDeltaHelpers;
+import org.cyclops.cyclopscore.network.packet.TileDeltaSyncPacket;
 import org.cyclops.cyclopscore.persist.nbt.INBTProvider;
 import org.cyclops.cyclopscore.persist.nbt.NBTPersist;
 import org.cyclops.cyclopscore.persist.nbt.NBTProviderComponent;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A base class for all the tile entities.
@@ -33,12 +40,26 @@ import java.util.Map;
  * Every instance has a continuously looping counter that counts from getUpdateBackoffTicks() to zero.
  * and every time the counter reaches zero, the backoff will be reset and an update packet will be sent
  * if one has been queued.
+ *
+ * Tiles that override {@link CyclopsTileEntity#isDeltaSync()} only send the changed parts of their NBT data
+ * in these updates, full snapshots are still sent when a chunk is loaded by a client.
+ * If {@link GeneralConfig#tileUpdateBatching} is enabled, updates are sent per chunk by the {@link TileUpdateScheduler}.
  * @author rubensworks
  *
  */
 public class CyclopsTileEntity extends TileEntity implements INBTProvider {
 
     private static final int UPDATE_BACKOFF_TICKS = 1;
+    private static final int CAPABILITY_TABLE_SLOTS = EnumFacing.VALUES.length + 1;
+    /**
+     * Capability ids per tile class, so that capability tables only contain the capabilities used by that class.
+     */
+    private static final ClassValue<Map<Capability<?>, Integer>> CAPABILITY_IDS = new ClassValue<Map<Capability<?>, Integer>>() {
+        @Override
+        protected Map<Capability<?>, Integer> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
 
     @NBTPersist
     private Boolean rotatable = false;
@@ -49,7 +70,13 @@ public class CyclopsTileEntity extends TileEntity implements INBTProvider {
     private boolean shouldSendUpdate = false;
     private int sendUpdateBackoff = 0;
     private final boolean ticking;
+    private NBTTagCompound lastUpdateTag = null;
     private Map<Pair<Capability<?>, EnumFacing>, Object> capabilities = Maps.newHashMap();
+    private Object[] capabilityTable = null;
+    private Map<Capability<?>, Integer> capabilityIds = null;
+    private TickWheel<CyclopsTileEntity> workTickWheel = null;
+    private boolean sleeping = false;
+    private long wakeTime = -1;
 
     public CyclopsTileEntity() {
         sendUpdateBackoff = (int) Math.round(Math.random() * getUpdateBackoffTicks()); // Random backoff so not all TE's will be updated at once.
@@ -124,7 +151,47 @@ public class CyclopsTileEntity extends TileEntity implements INBTProvider {
      * This contains the logic to send the update, so make sure to call the super!
      */
     protected void onSendUpdate() {
-        BlockHelpers.markForUpdate(getWorld(), getPos());
+        if(GeneralConfig.tileUpdateBatching && getWorld() instanceof WorldServer) {
+            TileUpdateScheduler.getInstance((WorldServer) getWorld()).enqueue(this);
+        } else if(isDeltaSync() && lastUpdateTag != null && getWorld() instanceof WorldServer) {
+            sendDeltaUpdate(getSyncTagCompound());
+        } else {
+            BlockHelpers.markForUpdate(getWorld(), getPos());
+        }
+    }
+
+    /**
+     * If updates of this tile should only contain the NBT data that changed since the previous update.
+     * If enabled, the server keeps a copy of the last sent NBT data and clients keep a copy of the last received data.
+     *
+     * This only reduces the size of update packets, not the work to create or handle them:
+     * the server still writes the full NBT data of this tile for each update and compares it with the previous data,
+     * and clients still apply the delta to their copy and read the full NBT data again.
+     * It also costs a copy of the NBT data per tile on both sides.
+     * So this is only worth it for tiles with large NBT data of which only small parts change per update.
+     * @return If delta updates are enabled, false by default.
+     */
+    protected boolean isDeltaSync() {
+        return false;
+    }
+
+    private boolean isDeltaSyncServer() {
+        return isDeltaSync() && getWorld() != null && !getWorld().isRemote;
+    }
+
+    /**
+     * Send the difference between the last sent NBT data and the given data to all tracking players.
+     * @param tag The current NBT data of this tile.
+     */
+    private void sendDeltaUpdate(NBTTagCompound tag) {
+        if(lastUpdateTag != null && getWorld() instanceof WorldServer) {
+            NBTTagCompound delta = NBTDeltaHelpers.createDelta(lastUpdateTag, tag);
+            if(delta != null) {
+                CyclopsCore._instance.getPacketHandler().sendToAllTracking(
+                        new TileDeltaSyncPacket(getPos(), delta), (WorldServer) getWorld(), getPos());
+            }
+        }
+        lastUpdateTag = tag.copy();
     }
 
     /**
@@ -141,19 +208,91 @@ public class CyclopsTileEntity extends TileEntity implements INBTProvider {
 
     }
 
+    /**
+     * Create the update entry of this tile for a batched update of the {@link TileUpdateScheduler}.
+     * @return The update entry, or null if nothing changed since the last delta update.
+     */
+    NBTTagCompound createScheduledUpdate() {
+        NBTTagCompound tag = getSyncTagCompound();
+        NBTTagCompound entry = new NBTTagCompound();
+        entry.setInteger("x", getPos().getX());
+        entry.setInteger("y", getPos().getY());
+        entry.setInteger("z", getPos().getZ());
+        if(isDeltaSync() && lastUpdateTag != null) {
+            NBTTagCompound delta = NBTDeltaHelpers.createDelta(lastUpdateTag, tag);
+            lastUpdateTag = tag.copy();
+            if(delta == null) {
+                return null;
+            }
+            entry.setTag("delta", delta);
+        } else {
+            if(isDeltaSync()) {
+                lastUpdateTag = tag.copy();
+            }
+            entry.setTag("full", tag);
+        }
+        return entry;
+    }
+
+    /**
+     * Called client-side when a batched update entry for this tile is received.
+     * @param entry The update entry.
+     */
+    public void onScheduledUpdateReceived(NBTTagCompound entry) {
+        if(entry.hasKey("delta")) {
+            onDeltaUpdateReceived(entry.getCompoundTag("delta"));
+        } else {
+            onFullUpdateReceived(entry.getCompoundTag("full"));
+            getWorld().markBlockRangeForRenderUpdate(getPos(), getPos());
+        }
+    }
+
     @Override
     public SPacketUpdateTileEntity getUpdatePacket() {
-        return new SPacketUpdateTileEntity(getPos(), 1, getNBTTagCompound());
+        NBTTagCompound tag = getSyncTagCompound();
+        if(isDeltaSyncServer()) {
+            lastUpdateTag = tag.copy();
+        }
+        return new SPacketUpdateTileEntity(getPos(), 1, tag);
     }
 
     @Override
     public void onDataPacket(NetworkManager net, SPacketUpdateTileEntity packet) {
         super.onDataPacket(net, packet);
-        NBTTagCompound tag = packet.getNbtCompound();
+        onFullUpdateReceived(packet.getNbtCompound());
+    }
+
+    private void onFullUpdateReceived(NBTTagCompound tag) {
+        if(isDeltaSync()) {
+            lastUpdateTag = tag.copy();
+        }
         readFromNBT(tag);
         onUpdateReceived();
     }
 
+    @Override
+    public void handleUpdateTag(NBTTagCompound tag) {
+        if(isDeltaSync()) {
+            lastUpdateTag = tag.copy();
+        }
+        super.handleUpdateTag(tag);
+    }
+
+    /**
+     * Called client-side when the changed NBT data of this tile is received.
+     * The delta is applied to the last received NBT data, after which the full result is read.
+     * This is ignored if no full update has been received yet.
+     * @param delta The NBT delta.
+     */
+    public void onDeltaUpdateReceived(NBTTagCompound delta) {
+        if(lastUpdateTag != null) {
+            NBTDeltaHelpers.applyDelta(lastUpdateTag, delta);
+            readFromNBT(lastUpdateTag.copy());
+            getWorld().markBlockRangeForRenderUpdate(getPos(), getPos());
+            onUpdateReceived();
+        }
+    }
+
     /**
      * This method is called when the tile entity receives
      * an update (ie a data packet) from the server.
@@ -164,6 +303,122 @@ public class CyclopsTileEntity extends TileEntity implements INBTProvider {
 
     }
 
+    /**
+     * Check if this tile should do its periodic work in the current tick.
+     * All tiles in a world that use the same interval are spread evenly over the ticks of that interval
+     * by a {@link TickWheel}, so this is true exactly once every interval ticks for each tile,
+     * and the number of tiles that do their work stays the same in each tick.
+     * @param interval The number of ticks between two consecutive work ticks.
+     * @return If this tile should do its work in the current tick.
+     */
+    protected boolean isWorkTick(int interval) {
+        if (workTickWheel == null || workTickWheel.getInterval() != interval) {
+            unregisterWorkTick();
+            workTickWheel = TileTickWheels.getInstance(getWorld(), interval);
+            workTickWheel.register(this, TickWheel.hash(getPos()));
+        }
+        return workTickWheel.isDue(this, getWorld().getTotalWorldTime());
+    }
+
+    private void unregisterWorkTick() {
+        if (workTickWheel != null) {
+            workTickWheel.unregister(this);
+            workTickWheel = null;
+        }
+    }
+
+    /**
+     * Let this tile stop ticking until it is woken up with {@link CyclopsTileEntity#wakeUp()}.
+     * This should be called by idle tiles, for example when they have no input, a full output or are disabled.
+     * Sleeping tiles are woken up when a neighbour changes or when their inventory or tank changes.
+     * Updates that are still pending because of the update backoff are sent once the tile wakes up.
+     * The sleep state is stored in NBT, so tiles keep sleeping when their chunk is reloaded, but it is never sent to clients.
+     * This has no effect on the client or for non-ticking tiles.
+     */
+    public void sleep() {
+        if(isTicking() && getWorld() != null && !getWorld().isRemote && !sleeping) {
+            sleeping = true;
+            wakeTime = -1;
+            TileSleepScheduler.getInstance(getWorld()).requestSleep(this);
+        }
+    }
+
+    /**
+     * Let this tile stop ticking for the given amount of ticks.
+     * It can be woken up earlier in the same ways as with {@link CyclopsTileEntity#sleep()}.
+     * @param ticks The number of ticks after which the tile will be woken up.
+     */
+    public void sleep(int ticks) {
+        sleep();
+        if(sleeping && !getWorld().isRemote) {
+            if(wakeTime >= 0) {
+                TileSleepScheduler.getInstance(getWorld()).cancelWakeUp(this, wakeTime);
+            }
+            wakeTime = getWorld().getTotalWorldTime() + ticks;
+            TileSleepScheduler.getInstance(getWorld()).scheduleWakeUp(this, wakeTime);
+        }
+    }
+
+    /**
+     * Let this tile tick again if it was sleeping.
+     * This can be called for any external change that may give an idle tile work.
+     */
+    public void wakeUp() {
+        if(sleeping) {
+            sleeping = false;
+            if(getWorld() != null && !getWorld().isRemote) {
+                TileSleepScheduler scheduler = TileSleepScheduler.getInstance(getWorld());
+                if(wakeTime >= 0) {
+                    scheduler.cancelWakeUp(this, wakeTime);
+                }
+                scheduler.requestWake(this);
+            }
+            wakeTime = -1;
+        }
+    }
+
+    /**
+     * @return If this tile is currently not ticking.
+     */
+    public boolean isSleeping() {
+        return sleeping;
+    }
+
+    /**
+     * @return The world time at which this tile is woken up, or -1 if there is no scheduled wake-up.
+     */
+    public long getWakeTime() {
+        return wakeTime;
+    }
+
+    /**
+     * Called when a neighbouring block or tile has changed.
+     * This wakes up this tile by default.
+     */
+    public void onNeighborChanged() {
+        wakeUp();
+    }
+
+    private void forgetSleep() {
+        if(sleeping && getWorld() != null && !getWorld().isRemote) {
+            TileSleepScheduler.getInstance(getWorld()).forget(this);
+        }
+    }
+
+    @Override
+    public void invalidate() {
+        super.invalidate();
+        unregisterWorkTick();
+        forgetSleep();
+    }
+
+    @Override
+    public void onChunkUnload() {
+        super.onChunkUnload();
+        unregisterWorkTick();
+        forgetSleep();
+    }
+
     /**
      * @return The minimum amount of ticks between two consecutive sent packets.
      */
@@ -194,6 +449,13 @@ public class CyclopsTileEntity extends TileEntity implements INBTProvider {
         
         // Separate action for direction
         tag.setInteger("rotation", rotation.ordinal());
+
+        if(sleeping) {
+            tag.setBoolean("sleeping", true);
+            if(wakeTime >= 0) {
+                tag.setLong("wakeTime", wakeTime);
+            }
+        }
         return tag;
     }
     
@@ -207,6 +469,9 @@ public class CyclopsTileEntity extends TileEntity implements INBTProvider {
         if(foundRotation != null) {
         	rotation = foundRotation;
         }
+
+        sleeping = tag.getBoolean("sleeping");
+        wakeTime = tag.hasKey("wakeTime") ? tag.getLong("wakeTime") : -1;
         onLoad();
     }
 
@@ -216,6 +481,15 @@ public class CyclopsTileEntity extends TileEntity implements INBTProvider {
     public void onLoad() {
         if (capabilities instanceof HashMap) {
             capabilities = ImmutableMap.copyOf(capabilities);
+            buildCapabilityTable();
+        }
+        // Stop ticking again after the tile has been loaded from NBT
+        if(sleeping && isTicking() && getWorld() != null && !getWorld().isRemote) {
+            TileSleepScheduler scheduler = TileSleepScheduler.getInstance(getWorld());
+            scheduler.requestSleep(this);
+            if(wakeTime >= 0) {
+                scheduler.scheduleWakeUp(this, wakeTime);
+            }
         }
     }
     
@@ -230,9 +504,26 @@ public class CyclopsTileEntity extends TileEntity implements INBTProvider {
         return tag;
     }
 
+    /**
+     * Get the NBT tag that is sent to clients.
+     * This is the {@link CyclopsTileEntity#getNBTTagCompound()} without the server-side sleep state.
+     * @return The NBT tag.
+     */
+    protected NBTTagCompound getSyncTagCompound() {
+        NBTTagCompound tag = getNBTTagCompound();
+        tag.removeTag("sleeping");
+        tag.removeTag("wakeTime");
+        return tag;
+    }
+
     @Override
     public NBTTagCompound getUpdateTag() {
-        return getNBTTagCompound();
+        NBTTagCompound tag = getSyncTagCompound();
+        if(isDeltaSyncServer()) {
+            // Bring the players that already track this tile to the same state as this new snapshot.
+            sendDeltaUpdate(tag);
+        }
+        return tag;
     }
 
     /**
@@ -286,6 +577,9 @@ public class CyclopsTileEntity extends TileEntity implements INBTProvider {
 
     @Override
     public boolean hasCapability(Capability<?> capability, EnumFacing facing) {
+        if (capabilityTable != null) {
+            return getCapabilityFromTable(capability, facing) != null || super.hasCapability(capability, facing);
+        }
         return (capabilities != null && capabilities.containsKey(Pair.<Capability<?>,
                     EnumFacing>of(capability, transformFacingForRotation(facing))))
                 || (facing != null && capabilities != null && capabilities.containsKey(Pair.<Capability<?>, EnumFacing>of(capability, null)))
@@ -294,7 +588,12 @@ public class CyclopsTileEntity extends TileEntity implements INBTProvider {
 
     @Override
     public <T> T getCapability(Capability<T> capability, EnumFacing facing) {
-        if (capabilities != null) {
+        if (capabilityTable != null) {
+            Object value = getCapabilityFromTable(capability, facing);
+            if (value != null) {
+                return (T) value;
+            }
+        } else if (capabilities != null) {
             Object value = capabilities.get(Pair.<Capability<?>,
                     EnumFacing>of(capability, transformFacingForRotation(facing)));
             if (value == null && facing != null) {
@@ -307,6 +606,61 @@ public class CyclopsTileEntity extends TileEntity implements INBTProvider {
         return super.getCapability(capability, facing);
     }
 
+    private Object getCapabilityFromTable(Capability<?> capability, EnumFacing facing) {
+        Integer id = capability == null ? null : capabilityIds.get(capability);
+        if (id == null) {
+            return null;
+        }
+        int index = id * CAPABILITY_TABLE_SLOTS + (facing == null
+                ? CAPABILITY_TABLE_SLOTS - 1 : transformFacingForRotation(facing).ordinal());
+        return index < capabilityTable.length ? capabilityTable[index] : null;
+    }
+
+    /**
+     * Freeze the capabilities of this tile into a table that is indexed by capability id and side.
+     * Each sided slot falls back to the sideless capability, so lookups need only one array access.
+     * Capability ids are assigned per tile class, so the table only grows with the capabilities of that class.
+     */
+    private void buildCapabilityTable() {
+        this.capabilityIds = CAPABILITY_IDS.get(getClass());
+        int maxId = -1;
+        for (Pair<Capability<?>, EnumFacing> key : capabilities.keySet()) {
+            maxId = Math.max(maxId, getCapabilityId(key.getLeft()));
+        }
+        Object[] table = new Object[(maxId + 1) * CAPABILITY_TABLE_SLOTS];
+        for (Map.Entry<Pair<Capability<?>, EnumFacing>, Object> entry : capabilities.entrySet()) {
+            if (entry.getKey().getRight() == null) {
+                int offset = getCapabilityId(entry.getKey().getLeft()) * CAPABILITY_TABLE_SLOTS;
+                for (int i = 0; i < CAPABILITY_TABLE_SLOTS; i++) {
+                    if (table[offset + i] == null) {
+                        table[offset + i] = entry.getValue();
+                    }
+                }
+            }
+        }
+        for (Map.Entry<Pair<Capability<?>, EnumFacing>, Object> entry : capabilities.entrySet()) {
+            if (entry.getKey().getRight() != null) {
+                table[getCapabilityId(entry.getKey().getLeft()) * CAPABILITY_TABLE_SLOTS
+                        + entry.getKey().getRight().ordinal()] = entry.getValue();
+            }
+        }
+        this.capabilityTable = table;
+    }
+
+    private int getCapabilityId(Capability<?> capability) {
+        Integer id = capabilityIds.get(capability);
+        if (id == null) {
+            synchronized (capabilityIds) {
+                id = capabilityIds.get(capability);
+                if (id == null) {
+                    id = capabilityIds.size();
+                    capabilityIds.put(capability, id);
+                }
+            }
+        }
+        return id;
+    }
+
     /**
      * Add a sideless capability.
      * This can only be called at tile construction time!
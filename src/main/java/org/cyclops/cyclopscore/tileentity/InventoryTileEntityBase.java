@@ -89,6 +89,7 @@ public abstract class InventoryTileEntityBase extends CyclopsTileEntity implemen
         if(isSendUpdateOnInventoryChanged())
             sendUpdate();
         updateInventoryHash();
+        wakeUp();
     }
 
     @Override
@@ -155,6 +156,7 @@ public abstract class InventoryTileEntityBase extends CyclopsTileEntity implemen
     public void markDirty() {
         updateInventoryHash();
         super.markDirty();
+        wakeUp();
     }
 
     @Override
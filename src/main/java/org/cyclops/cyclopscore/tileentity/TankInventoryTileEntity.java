@@ -178,6 +178,7 @@ public abstract class TankInventoryTileEntity extends InventoryTileEntity implem
     @Override
     public void onTankChanged() {
         sendUpdate();
+        wakeUp();
         if (isUpdateInventoryHashOnTankContentsChanged()) {
             updateInventoryHash();
         }
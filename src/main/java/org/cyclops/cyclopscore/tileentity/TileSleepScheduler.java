@@ -0,0 +1,206 @@
+package org.cyclops.cyclopscore.tileentity;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import net.minecraft.world.World;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
+import net.minecraftforge.fml.relauncher.Side;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ * Removes sleeping {@link CyclopsTileEntity} instances from the ticking tiles of a world, and adds them again when they wake up.
+ *
+ * The ticking tiles of a world are iterated while tiles are being updated,
+ * so all changes are deferred to the end of the world tick.
+ * Scheduled wake-ups are also handled at the end of the world tick.
+ * @author rubensworks
+ */
+public class TileSleepScheduler {
+
+    private static final Map<World, TileSleepScheduler> SCHEDULERS = new WeakHashMap<>();
+
+    private final World world;
+    private final Set<CyclopsTileEntity> sleeping = Sets.newIdentityHashSet();
+    private final Set<CyclopsTileEntity> toSleep = Sets.newIdentityHashSet();
+    private final Set<CyclopsTileEntity> toWake = Sets.newIdentityHashSet();
+    private final TreeMap<Long, List<CyclopsTileEntity>> wakeUps = Maps.newTreeMap();
+
+    protected TileSleepScheduler(World world) {
+        this.world = world;
+    }
+
+    /**
+     * Get the sleep scheduler of the given world.
+     * @param world A server world.
+     * @return The scheduler.
+     */
+    public static synchronized TileSleepScheduler getInstance(World world) {
+        TileSleepScheduler scheduler = SCHEDULERS.get(world);
+        if (scheduler == null) {
+            scheduler = new TileSleepScheduler(world);
+            SCHEDULERS.put(world, scheduler);
+        }
+        return scheduler;
+    }
+
+    /**
+     * Remove the given tile from the ticking tiles at the end of this tick.
+     * @param tile The tile.
+     */
+    protected void requestSleep(CyclopsTileEntity tile) {
+        toWake.remove(tile);
+        toSleep.add(tile);
+    }
+
+    /**
+     * Add the given tile to the ticking tiles again at the end of this tick.
+     * @param tile The tile.
+     */
+    protected void requestWake(CyclopsTileEntity tile) {
+        if (world.isRemote) {
+            return;
+        }
+        toSleep.remove(tile);
+        toWake.add(tile);
+    }
+
+    /**
+     * Wake up the given tile at the given world time.
+     * @param tile The tile.
+     * @param wakeTime The world time.
+     */
+    protected void scheduleWakeUp(CyclopsTileEntity tile, long wakeTime) {
+        List<CyclopsTileEntity> tiles = wakeUps.get(wakeTime);
+        if (tiles == null) {
+            tiles = Lists.newArrayList();
+            wakeUps.put(wakeTime, tiles);
+        }
+        tiles.add(tile);
+    }
+
+    /**
+     * Remove a scheduled wake-up of the given tile.
+     * @param tile The tile.
+     * @param wakeTime The world time at which the tile was scheduled to wake up.
+     */
+    protected void cancelWakeUp(CyclopsTileEntity tile, long wakeTime) {
+        List<CyclopsTileEntity> tiles = wakeUps.get(wakeTime);
+        if (tiles != null) {
+            tiles.remove(tile);
+            if (tiles.isEmpty()) {
+                wakeUps.remove(wakeTime);
+            }
+        }
+    }
+
+    /**
+     * Stop tracking the given tile, because it was removed from the world.
+     * This also removes its scheduled wake-up, so unloaded tiles are not kept in memory.
+     * @param tile The tile.
+     */
+    protected void forget(CyclopsTileEntity tile) {
+        sleeping.remove(tile);
+        toSleep.remove(tile);
+        toWake.remove(tile);
+        if (tile.getWakeTime() >= 0) {
+            cancelWakeUp(tile, tile.getWakeTime());
+        }
+    }
+
+    /**
+     * @return The tiles that are currently not ticking.
+     */
+    public Set<CyclopsTileEntity> getSleepingTiles() {
+        return Collections.unmodifiableSet(sleeping);
+    }
+
+    /**
+     * @return The number of tiles that are waiting for a scheduled wake-up.
+     */
+    public int getScheduledWakeUps() {
+        int count = 0;
+        for (List<CyclopsTileEntity> tiles : wakeUps.values()) {
+            for (CyclopsTileEntity tile : tiles) {
+                if (tile.isSleeping() && !tile.isInvalid()) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    protected void tick() {
+        long time = world.getTotalWorldTime();
+        Iterator<Map.Entry<Long, List<CyclopsTileEntity>>> it = wakeUps.headMap(time, true).entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, List<CyclopsTileEntity>> entry = it.next();
+            it.remove();
+            for (CyclopsTileEntity tile : entry.getValue()) {
+                // Ignore tiles that were woken or rescheduled in the meantime.
+                if (tile.isSleeping() && tile.getWakeTime() == entry.getKey()) {
+                    tile.wakeUp();
+                }
+            }
+        }
+
+        if (!toSleep.isEmpty()) {
+            Set<CyclopsTileEntity> removed = Sets.newIdentityHashSet();
+            for (CyclopsTileEntity tile : toSleep) {
+                if (!tile.isInvalid() && sleeping.add(tile)) {
+                    removed.add(tile);
+                }
+            }
+            toSleep.clear();
+            if (!removed.isEmpty()) {
+                world.tickableTileEntities.removeAll(removed);
+            }
+        }
+
+        if (!toWake.isEmpty()) {
+            for (CyclopsTileEntity tile : toWake) {
+                if (sleeping.remove(tile) && !tile.isInvalid() && world.getTileEntity(tile.getPos()) == tile) {
+                    world.tickableTileEntities.add(tile);
+                }
+            }
+            toWake.clear();
+        }
+    }
+
+    /**
+     * Event listener that applies the sleep changes of all worlds at the end of each world tick.
+     */
+    public static class EventListener {
+
+        @SubscribeEvent
+        public void onWorldTick(TickEvent.WorldTickEvent event) {
+            if (event.phase == TickEvent.Phase.END && event.side == Side.SERVER) {
+                TileSleepScheduler scheduler;
+                synchronized (TileSleepScheduler.class) {
+                    scheduler = SCHEDULERS.get(event.world);
+                }
+                if (scheduler != null) {
+                    scheduler.tick();
+                }
+            }
+        }
+
+        @SubscribeEvent
+        public void onWorldUnload(WorldEvent.Unload event) {
+            synchronized (TileSleepScheduler.class) {
+                SCHEDULERS.remove(event.getWorld());
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,55 @@
+package org.cyclops.cyclopscore.tileentity;
+
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import net.minecraft.world.World;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import org.cyclops.cyclopscore.datastructure.TickWheel;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Holds the {@link TickWheel} instances per world and interval for {@link CyclopsTileEntity#isWorkTick(int)}.
+ * @author rubensworks
+ */
+public class TileTickWheels {
+
+    private static final Map<World, TIntObjectMap<TickWheel<CyclopsTileEntity>>> WHEELS = new WeakHashMap<>();
+
+    /**
+     * Get the tick wheel of the given world for the given interval.
+     * @param world The world.
+     * @param interval The interval in ticks.
+     * @return The tick wheel.
+     */
+    public static synchronized TickWheel<CyclopsTileEntity> getInstance(World world, int interval) {
+        TIntObjectMap<TickWheel<CyclopsTileEntity>> worldWheels = WHEELS.get(world);
+        if (worldWheels == null) {
+            worldWheels = new TIntObjectHashMap<>();
+            WHEELS.put(world, worldWheels);
+        }
+        TickWheel<CyclopsTileEntity> wheel = worldWheels.get(interval);
+        if (wheel == null) {
+            wheel = new TickWheel<>(interval);
+            worldWheels.put(interval, wheel);
+        }
+        return wheel;
+    }
+
+    /**
+     * Event listener that removes the tick wheels of unloaded worlds.
+     */
+    public static class EventListener {
+
+        @SubscribeEvent
+        public void onWorldUnload(WorldEvent.Unload event) {
+            synchronized (TileTickWheels.class) {
+                WHEELS.remove(event.getWorld());
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,233 @@
+package org.cyclops.cyclopscore.tileentity;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import lombok.Getter;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.server.management.PlayerChunkMapEntry;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
+import org.cyclops.cyclopscore.CyclopsCore;
+import org.cyclops.cyclopscore.GeneralConfig;
+import org.cyclops.cyclopscore.network.packet.TileUpdateBatchPacket;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Collects the updates of {@link CyclopsTileEntity} instances in a world and sends them in batches.
+ *
+ * All tiles that requested an update are grouped per chunk, and each chunk is sent as a single packet
+ * to the players that track it.
+ * Updates in chunks that no player tracks are dropped without using the packet budget,
+ * as those players will receive the full tile data when they start tracking the chunk.
+ * At most {@link GeneralConfig#tileUpdatePacketBudget} packets are sent per tick over all worlds.
+ * Chunks are served round-robin: remaining chunks are deferred to the start of the next tick,
+ * and a chunk that was sent is queued again at the end if its tiles request another update.
+ * @author rubensworks
+ */
+public class TileUpdateScheduler {
+
+    private static final Map<World, TileUpdateScheduler> SCHEDULERS = new WeakHashMap<>();
+    private static int tickOffset = 0;
+
+    private final WorldServer world;
+    private final Map<ChunkPos, Set<CyclopsTileEntity>> queue = Maps.newLinkedHashMap();
+    private final Set<CyclopsTileEntity> deferredTiles = Sets.newIdentityHashSet();
+    @Getter
+    private final Counters counters = new Counters();
+    private final Map<Class<? extends CyclopsTileEntity>, Counters> typeCounters = Maps.newHashMap();
+
+    protected TileUpdateScheduler(WorldServer world) {
+        this.world = world;
+    }
+
+    /**
+     * Get the update scheduler of the given world.
+     * @param world A server world.
+     * @return The scheduler.
+     */
+    public static synchronized TileUpdateScheduler getInstance(WorldServer world) {
+        TileUpdateScheduler scheduler = SCHEDULERS.get(world);
+        if (scheduler == null) {
+            scheduler = new TileUpdateScheduler(world);
+            SCHEDULERS.put(world, scheduler);
+        }
+        return scheduler;
+    }
+
+    /**
+     * Queue an update for the given tile.
+     * Queueing the same tile multiple times before it is sent results in a single update.
+     * @param tile The tile.
+     */
+    public void enqueue(CyclopsTileEntity tile) {
+        BlockPos pos = tile.getPos();
+        ChunkPos chunkPos = new ChunkPos(pos.getX() >> 4, pos.getZ() >> 4);
+        Set<CyclopsTileEntity> tiles = queue.get(chunkPos);
+        if (tiles == null) {
+            tiles = Sets.newLinkedHashSet();
+            queue.put(chunkPos, tiles);
+        }
+        if (tiles.add(tile)) {
+            counters.queued++;
+            getTypeCounters(tile.getClass()).queued++;
+        }
+    }
+
+    /**
+     * @return The number of chunks that currently have queued updates.
+     */
+    public int getQueuedChunks() {
+        return queue.size();
+    }
+
+    /**
+     * @return The update counters for each tile type in this world.
+     */
+    public Map<Class<? extends CyclopsTileEntity>, Counters> getTypeCounters() {
+        return Collections.unmodifiableMap(typeCounters);
+    }
+
+    protected Counters getTypeCounters(Class<? extends CyclopsTileEntity> type) {
+        Counters typeCounter = typeCounters.get(type);
+        if (typeCounter == null) {
+            typeCounter = new Counters();
+            typeCounters.put(type, typeCounter);
+        }
+        return typeCounter;
+    }
+
+    /**
+     * Send the queued updates of this world.
+     * @param budget The maximum number of packets that may be sent.
+     * @return The number of sent packets.
+     */
+    protected int flush(int budget) {
+        int packets = 0;
+        Iterator<Map.Entry<ChunkPos, Set<CyclopsTileEntity>>> it = queue.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<ChunkPos, Set<CyclopsTileEntity>> entry = it.next();
+            if (!isTracked(entry.getKey())) {
+                it.remove();
+                onRemoved(entry.getValue());
+                for (CyclopsTileEntity tile : entry.getValue()) {
+                    counters.untracked++;
+                    getTypeCounters(tile.getClass()).untracked++;
+                }
+            } else if (packets >= budget) {
+                for (CyclopsTileEntity tile : entry.getValue()) {
+                    // Only count each tile once, no matter how many ticks it has to wait.
+                    if (deferredTiles.add(tile)) {
+                        counters.deferred++;
+                        getTypeCounters(tile.getClass()).deferred++;
+                    }
+                }
+            } else {
+                it.remove();
+                onRemoved(entry.getValue());
+                if (sendChunk(entry.getKey(), entry.getValue())) {
+                    packets++;
+                }
+            }
+        }
+        return packets;
+    }
+
+    protected void onRemoved(Set<CyclopsTileEntity> tiles) {
+        if (!deferredTiles.isEmpty()) {
+            deferredTiles.removeAll(tiles);
+        }
+    }
+
+    protected boolean isTracked(ChunkPos chunkPos) {
+        PlayerChunkMapEntry entry = world.getPlayerChunkMap().getEntry(chunkPos.x, chunkPos.z);
+        return entry != null && entry.isSentToPlayers();
+    }
+
+    protected boolean sendChunk(ChunkPos chunkPos, Set<CyclopsTileEntity> tiles) {
+        List<NBTTagCompound> entries = Lists.newArrayListWithExpectedSize(tiles.size());
+        for (CyclopsTileEntity tile : tiles) {
+            if (!tile.isInvalid() && tile.getWorld() == world) {
+                NBTTagCompound entry = tile.createScheduledUpdate();
+                if (entry != null) {
+                    entries.add(entry);
+                    counters.sent++;
+                    getTypeCounters(tile.getClass()).sent++;
+                }
+            }
+        }
+        if (entries.isEmpty()) {
+            return false;
+        }
+        CyclopsCore._instance.getPacketHandler().sendToAllTracking(new TileUpdateBatchPacket(entries), world,
+                chunkPos.getBlock(0, 0, 0));
+        return true;
+    }
+
+    /**
+     * Event listener that flushes all schedulers at the end of each server tick.
+     */
+    public static class EventListener {
+
+        @SubscribeEvent
+        public void onServerTick(TickEvent.ServerTickEvent event) {
+            if (event.phase == TickEvent.Phase.END) {
+                List<TileUpdateScheduler> schedulers;
+                synchronized (TileUpdateScheduler.class) {
+                    schedulers = Lists.newArrayList(SCHEDULERS.values());
+                }
+                if (!schedulers.isEmpty()) {
+                    // Rotate the starting world, so that no world is starved when the budget is exceeded.
+                    int budget = GeneralConfig.tileUpdatePacketBudget;
+                    tickOffset = (tickOffset + 1) % schedulers.size();
+                    for (int i = 0; i < schedulers.size(); i++) {
+                        budget -= schedulers.get((i + tickOffset) % schedulers.size()).flush(Math.max(0, budget));
+                    }
+                }
+            }
+        }
+
+        @SubscribeEvent
+        public void onWorldUnload(WorldEvent.Unload event) {
+            synchronized (TileUpdateScheduler.class) {
+                SCHEDULERS.remove(event.getWorld());
+            }
+        }
+
+    }
+
+    /**
+     * Counters for tile updates.
+     */
+    @Getter
+    public static class Counters {
+        /**
+         * The number of tile updates that were queued.
+         */
+        private long queued;
+        /**
+         * The number of tile updates that were sent.
+         */
+        private long sent;
+        /**
+         * The number of queued tile updates that were deferred to a next tick because of the packet budget.
+         */
+        private long deferred;
+        /**
+         * The number of queued tile updates that were dropped because no player tracks their chunk.
+         */
+        private long untracked;
+    }
+
+}
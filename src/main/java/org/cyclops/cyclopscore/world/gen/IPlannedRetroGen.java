@@ -0,0 +1,38 @@
+package org.cyclops.cyclopscore.world.gen;
+
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.world.chunk.Chunk;
+
+import java.util.Random;
+
+/**
+ * Retro-generator of which the placements can be calculated off the server thread.
+ * Retrogen is split in two phases: a plan is calculated on a worker thread,
+ * after which the plan is applied to the chunk on the server thread.
+ * @param <P> The type of plan.
+ * @author rubensworks
+ */
+public interface IPlannedRetroGen<P> extends IRetroGen {
+
+	/**
+	 * Calculate the placements for a chunk.
+	 * This can be called from any thread, so this may not access the world or the chunk.
+	 * The given random must be consumed in the same way as {@link IRetroGen#retroGenerateChunk(NBTTagCompound, Chunk, Random)}
+	 * would, so that the result is the same regardless of which phase it is called in.
+	 * @param chunkX The chunk X coordinate.
+	 * @param chunkZ The chunk Z coordinate.
+	 * @param random The random instance.
+	 * @return The plan.
+	 */
+	public P planRetroGenChunk(int chunkX, int chunkZ, Random random);
+
+	/**
+	 * Apply a plan to a chunk.
+	 * This is always called on the server thread.
+	 * @param tag The retrogen info tag for which retrogen should start. This tag is read-only.
+	 * @param chunk The chunk.
+	 * @param plan The plan that was calculated for this chunk.
+	 */
+	public void applyRetroGenPlan(NBTTagCompound tag, Chunk chunk, P plan);
+
+}
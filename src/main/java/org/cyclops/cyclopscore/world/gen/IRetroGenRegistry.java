@@ -30,4 +30,14 @@ public interface IRetroGenRegistry extends IRegistry {
      */
     public void retroGenSave(ChunkDataEvent.Save event);
 
+    /**
+     * @return The number of loaded chunks that are waiting for retrogen.
+     */
+    public int getPendingChunkCount();
+
+    /**
+     * @return The number of chunks that were retrogenerated per second, measured over the last second.
+     */
+    public double getProcessedChunksPerSecond();
+
 }
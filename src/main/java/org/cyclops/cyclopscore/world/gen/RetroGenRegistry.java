@@ -1,29 +1,65 @@
 package org.cyclops.cyclopscore.world.gen;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.Getter;
 import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.network.play.server.SPacketChunkData;
+import net.minecraft.server.management.PlayerChunkMapEntry;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
 import net.minecraft.world.chunk.Chunk;
 import net.minecraftforge.event.world.ChunkDataEvent;
+import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
 import org.apache.logging.log4j.Level;
+import org.cyclops.cyclopscore.GeneralConfig;
 import org.cyclops.cyclopscore.init.ModBase;
 
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Registry for {@link IRetroGen} instances.
+ *
+ * Chunks that require retrogen are queued when they are loaded,
+ * and the queue is processed at the end of each server tick within {@link GeneralConfig#retroGenTickBudget}.
+ * Queued chunks that are saved before they are processed keep their previous retrogen data,
+ * so that they are queued again the next time they are loaded.
+ *
+ * If all retro-generators for a chunk are {@link IPlannedRetroGen}, their plans are calculated
+ * on {@link GeneralConfig#retroGenPlanningThreads} background threads, and only applied on the server thread.
+ * Each plan uses its own random seeded by the chunk position, and the retro-generators are always
+ * planned and applied in the same order, so the result does not depend on the number of threads.
  * @author rubensworks
  */
 public class RetroGenRegistry implements IRetroGenRegistry {
 	
 	private static RetroGenRegistry _instance = null;
+	private static ExecutorService planningExecutor = null;
 
 	private final Set<IRetroGen> retroGeneratables = Sets.newHashSet();
 	private final Random random = new Random();
 	@Getter private final ModBase mod;
+	private final Map<World, Map<ChunkPos, PendingChunk>> pendingChunks = new WeakHashMap<>();
+	private int plansInProgress = 0;
+	@Getter private long processedChunks = 0;
+	private long rateStartTime = System.currentTimeMillis();
+	private long rateStartProcessedChunks = 0;
+	private double processedChunksPerSecond = 0;
 	
 	public RetroGenRegistry(ModBase mod) {
 		this.mod = mod;
@@ -43,40 +79,245 @@ public class RetroGenRegistry implements IRetroGenRegistry {
     public void retroGenLoad(ChunkDataEvent.Load event) {
 		if(getMod().getReferenceValue(ModBase.REFKEY_RETROGEN) && event.getData() != null) {
 			NBTTagCompound tag = event.getData().getCompoundTag(getNBTTag());
-			if(tag == null) {
-				tag = new NBTTagCompound();
-			}
-			setChunkSeed(event.getWorld(), event.getChunk());
-			
-			boolean atLeastOneModified = false;
+			int dimension = event.getWorld().provider.getDimension();
 			for(IRetroGen retroGen : retroGeneratables) {
-				if(retroGen.shouldRetroGen(tag, event.getWorld().provider.getDimension())) {
-					retroGen.retroGenerateChunk(tag, event.getChunk(), random);
-					getMod().log(Level.INFO, "Retrogenerating chunk at "
-                            + event.getChunk().x + ":" + event.getChunk().z);
-					atLeastOneModified = true;
+				if(retroGen.shouldRetroGen(tag, dimension)) {
+					PendingChunk previous = getPendingChunks(event.getWorld()).put(event.getChunk().getPos(), new PendingChunk(tag));
+					if(previous != null) {
+						cancelPlan(previous);
+					}
+					break;
 				}
 			}
-			
-			if(atLeastOneModified) {
-				event.getChunk().markDirty();
+		}
+	}
+
+	protected Map<ChunkPos, PendingChunk> getPendingChunks(World world) {
+		Map<ChunkPos, PendingChunk> chunks = pendingChunks.get(world);
+		if(chunks == null) {
+			chunks = Maps.newLinkedHashMap();
+			pendingChunks.put(world, chunks);
+		}
+		return chunks;
+	}
+
+	@Override
+	public int getPendingChunkCount() {
+		int count = 0;
+		for(Map<ChunkPos, PendingChunk> chunks : pendingChunks.values()) {
+			count += chunks.size();
+		}
+		return count;
+	}
+
+	@Override
+	public double getProcessedChunksPerSecond() {
+		return processedChunksPerSecond;
+	}
+
+	protected static synchronized ExecutorService getPlanningExecutor() {
+		if(planningExecutor == null && GeneralConfig.retroGenPlanningThreads > 0) {
+			planningExecutor = Executors.newFixedThreadPool(GeneralConfig.retroGenPlanningThreads,
+					new ThreadFactoryBuilder().setNameFormat("RetroGen Planner %d").setDaemon(true).build());
+		}
+		return planningExecutor;
+	}
+
+	protected int getMaxPlansInProgress() {
+		return Math.max(1, GeneralConfig.retroGenPlanningThreads) * 16;
+	}
+
+	/**
+	 * Retrogenerate queued chunks until the tick budget is exceeded.
+	 * At least one chunk is processed per tick, so that the queue always progresses.
+	 * Plans for queued chunks are started in the background, and applied once they are ready.
+	 * @param event The tick event.
+	 */
+	@SubscribeEvent
+	public void onServerTick(TickEvent.ServerTickEvent event) {
+		if(event.phase != TickEvent.Phase.END) {
+			return;
+		}
+		if(!pendingChunks.isEmpty()) {
+			long deadline = System.nanoTime() + GeneralConfig.retroGenTickBudget * 1000000L;
+			boolean processedOne = false;
+			ExecutorService executor = getPlanningExecutor();
+			for(Map.Entry<World, Map<ChunkPos, PendingChunk>> worldEntry : pendingChunks.entrySet()) {
+				World world = worldEntry.getKey();
+				int dimension = world.provider.getDimension();
+				Iterator<Map.Entry<ChunkPos, PendingChunk>> it = worldEntry.getValue().entrySet().iterator();
+				while(it.hasNext()) {
+					boolean inBudget = !processedOne || System.nanoTime() < deadline;
+					if(!inBudget && (executor == null || plansInProgress >= getMaxPlansInProgress())) {
+						break;
+					}
+					Map.Entry<ChunkPos, PendingChunk> entry = it.next();
+					PendingChunk pending = entry.getValue();
+					Chunk chunk = world.getChunkProvider().getLoadedChunk(entry.getKey().x, entry.getKey().z);
+					if(chunk == null) {
+						// Unloaded chunks were saved with their previous retrogen data, and are queued again when loaded.
+						it.remove();
+						cancelPlan(pending);
+					} else if(pending.plans != null) {
+						if(inBudget && pending.plans.isDone()) {
+							it.remove();
+							plansInProgress--;
+							applyPlans(world, chunk, pending);
+							processedOne = true;
+						}
+					} else if(executor != null && isPlannable(pending.tag, dimension)) {
+						if(plansInProgress < getMaxPlansInProgress()) {
+							pending.plans = executor.submit(createPlanner(world, chunk, pending));
+							plansInProgress++;
+						}
+					} else if(inBudget) {
+						it.remove();
+						retroGenerateChunk(world, chunk, pending.tag);
+						processedOne = true;
+					}
+				}
+			}
+			pendingChunks.values().removeIf(Map::isEmpty);
+		}
+		updateRate();
+	}
+
+	protected boolean isPlannable(NBTTagCompound tag, int dimension) {
+		for(IRetroGen retroGen : retroGeneratables) {
+			if(!(retroGen instanceof IPlannedRetroGen) && retroGen.shouldRetroGen(tag, dimension)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Create a task that plans all applicable retro-generators for the given chunk.
+	 * The applicable retro-generators and the chunk seed are determined on the server thread.
+	 * @param world The world.
+	 * @param chunk The chunk.
+	 * @param pending The pending chunk, its retro-generators will be set.
+	 * @return The planning task.
+	 */
+	protected Callable<List<Object>> createPlanner(World world, Chunk chunk, PendingChunk pending) {
+		int dimension = world.provider.getDimension();
+		List<IPlannedRetroGen<?>> retroGens = Lists.newArrayList();
+		for(IRetroGen retroGen : retroGeneratables) {
+			if(retroGen.shouldRetroGen(pending.tag, dimension)) {
+				retroGens.add((IPlannedRetroGen<?>) retroGen);
 			}
 		}
+		pending.retroGens = retroGens;
+		long chunkSeed = getChunkSeed(world.getSeed(), chunk.x, chunk.z);
+		int chunkX = chunk.x;
+		int chunkZ = chunk.z;
+		return () -> {
+			Random random = new Random(chunkSeed);
+			List<Object> plans = Lists.newArrayListWithCapacity(retroGens.size());
+			for(IPlannedRetroGen<?> retroGen : retroGens) {
+				plans.add(retroGen.planRetroGenChunk(chunkX, chunkZ, random));
+			}
+			return plans;
+		};
+	}
+
+	/**
+	 * Apply the finished plans of the given chunk.
+	 * If planning failed, the chunk is retro-generated on the server thread instead.
+	 * @param world The world.
+	 * @param chunk The chunk.
+	 * @param pending The pending chunk with finished plans.
+	 */
+	@SuppressWarnings("unchecked")
+	protected void applyPlans(World world, Chunk chunk, PendingChunk pending) {
+		List<Object> plans;
+		try {
+			plans = pending.plans.get();
+		} catch (InterruptedException | ExecutionException e) {
+			getMod().log(Level.ERROR, "Could not plan retrogen for chunk at " + chunk.x + ":" + chunk.z
+					+ ", retro-generating it directly instead: " + e.getMessage());
+			e.printStackTrace();
+			retroGenerateChunk(world, chunk, pending.tag);
+			return;
+		}
+		for(int i = 0; i < plans.size(); i++) {
+			((IPlannedRetroGen<Object>) pending.retroGens.get(i)).applyRetroGenPlan(pending.tag, chunk, plans.get(i));
+		}
+		if(!plans.isEmpty()) {
+			onChunkRetrogenerated(chunk);
+		}
+		processedChunks++;
+	}
+
+	protected void cancelPlan(PendingChunk pending) {
+		if(pending.plans != null) {
+			pending.plans.cancel(false);
+			pending.plans = null;
+			plansInProgress--;
+		}
+	}
+
+	protected void retroGenerateChunk(World world, Chunk chunk, NBTTagCompound tag) {
+		random.setSeed(getChunkSeed(world.getSeed(), chunk.x, chunk.z));
+		int dimension = world.provider.getDimension();
+		boolean atLeastOneModified = false;
+		for(IRetroGen retroGen : retroGeneratables) {
+			if(retroGen.shouldRetroGen(tag, dimension)) {
+				retroGen.retroGenerateChunk(tag, chunk, random);
+				atLeastOneModified = true;
+			}
+		}
+		if(atLeastOneModified) {
+			onChunkRetrogenerated(chunk);
+		}
+		processedChunks++;
+	}
+
+	/**
+	 * Called after blocks have been changed in the given chunk by retrogen.
+	 * Retrogen writes directly into the chunk sections after the chunk may already have been sent to players,
+	 * so the chunk is sent again to all players that are tracking it.
+	 * @param chunk The chunk.
+	 */
+	protected void onChunkRetrogenerated(Chunk chunk) {
+		getMod().log(Level.DEBUG, "Retrogenerated chunk at " + chunk.x + ":" + chunk.z);
+		chunk.markDirty();
+		if(chunk.getWorld() instanceof WorldServer) {
+			PlayerChunkMapEntry entry = ((WorldServer) chunk.getWorld()).getPlayerChunkMap().getEntry(chunk.x, chunk.z);
+			if(entry != null && entry.isSentToPlayers()) {
+				entry.sendPacket(new SPacketChunkData(chunk, 65535));
+			}
+		}
+	}
+
+	protected void updateRate() {
+		long time = System.currentTimeMillis();
+		if(time - rateStartTime >= 1000) {
+			processedChunksPerSecond = (processedChunks - rateStartProcessedChunks) * 1000D / (time - rateStartTime);
+			rateStartTime = time;
+			rateStartProcessedChunks = processedChunks;
+		}
 	}
 	
-	private void setChunkSeed(World world, Chunk chunk) {
+	protected static long getChunkSeed(long worldSeed, int chunkX, int chunkZ) {
 		// Based on RWTema's DenseOres retrogen
-        random.setSeed(world.getSeed());
+		Random random = new Random(worldSeed);
         long xSeed = random.nextLong() >> 2 + 1L;
         long zSeed = random.nextLong() >> 2 + 1L;
-        long chunkSeed = (xSeed * chunk.x + zSeed * chunk.z) ^ world.getSeed();
-        random.setSeed(chunkSeed);
+        return (xSeed * chunkX + zSeed * chunkZ) ^ worldSeed;
 	}
 
 	@Override
 	@SubscribeEvent
     public void retroGenSave(ChunkDataEvent.Save event) {
 		if(getMod().getReferenceValue(ModBase.REFKEY_RETROGEN) && event.getData() != null) {
+			Map<ChunkPos, PendingChunk> chunks = pendingChunks.get(event.getWorld());
+			PendingChunk pending = chunks == null ? null : chunks.get(event.getChunk().getPos());
+			if(pending != null) {
+				// This chunk has not been retrogenerated yet, so keep its previous retrogen data.
+				event.getData().setTag(getNBTTag(), pending.tag.copy());
+				return;
+			}
 			NBTTagCompound tag = event.getData().getCompoundTag(getNBTTag());
 			if(tag == null) {
 				tag = new NBTTagCompound();
@@ -87,5 +328,30 @@ public class RetroGenRegistry implements IRetroGenRegistry {
 			event.getData().setTag(getNBTTag(), tag);
 		}
 	}
+
+	@SubscribeEvent
+	public void onWorldUnload(WorldEvent.Unload event) {
+		Map<ChunkPos, PendingChunk> chunks = pendingChunks.remove(event.getWorld());
+		if(chunks != null) {
+			for(PendingChunk pending : chunks.values()) {
+				cancelPlan(pending);
+			}
+		}
+	}
+
+	/**
+	 * A chunk that is waiting for retrogen.
+	 */
+	protected static class PendingChunk {
+
+		protected final NBTTagCompound tag;
+		protected List<IPlannedRetroGen<?>> retroGens = null;
+		protected Future<List<Object>> plans = null;
+
+		public PendingChunk(NBTTagCompound tag) {
+			this.tag = tag;
+		}
+
+	}
 	
 }
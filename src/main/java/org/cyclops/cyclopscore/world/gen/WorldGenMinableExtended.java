@@ -1,6 +1,7 @@
 package org.cyclops.cyclopscore.world.gen;
 
 import com.google.common.base.Predicate;
+import gnu.trove.list.array.TIntArrayList;
 import net.minecraft.block.Block;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.block.state.pattern.BlockMatcher;
@@ -13,7 +14,7 @@ import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 import net.minecraft.world.gen.feature.WorldGenMinable;
 import org.cyclops.cyclopscore.helper.WorldHelpers;
 
-import javax.annotation.Nullable;
+import java.util.Arrays;
 import java.util.Random;
 
 /**
@@ -21,7 +22,7 @@ import java.util.Random;
  * @author rubensworks
  *
  */
-public class WorldGenMinableExtended extends WorldGenMinable implements IRetroGen {
+public class WorldGenMinableExtended extends WorldGenMinable implements IPlannedRetroGen<TIntArrayList> {
 	
     protected int blocksPerVein;
     protected int veinsPerChunk;
@@ -29,6 +30,8 @@ public class WorldGenMinableExtended extends WorldGenMinable implements IRetroGe
     protected int endY;
     protected IBlockState state;
     protected Block replaceTarget;
+    protected Predicate<IBlockState> replacePredicate;
+    private final float[] veinSinTable;
     
     /**
      * Make a new instance.
@@ -40,13 +43,20 @@ public class WorldGenMinableExtended extends WorldGenMinable implements IRetroGe
      * @param replaceTarget The replace target blockState. Stone for overworld, netherrack for nether.
      */
     public WorldGenMinableExtended(IBlockState state, int blocksPerVein, int veinsPerChunk, int startY, int endY, Block replaceTarget) {
-        super(state, blocksPerVein, BlockMatcher.forBlock(replaceTarget));
+        this(state, blocksPerVein, veinsPerChunk, startY, endY, replaceTarget, BlockMatcher.forBlock(replaceTarget));
+    }
+
+    private WorldGenMinableExtended(IBlockState state, int blocksPerVein, int veinsPerChunk, int startY, int endY,
+                                    Block replaceTarget, Predicate<IBlockState> replacePredicate) {
+        super(state, blocksPerVein, replacePredicate);
+        this.replacePredicate = replacePredicate;
         this.state = state;
         this.blocksPerVein = blocksPerVein;
         this.veinsPerChunk = veinsPerChunk;
         this.startY = startY;
         this.endY = endY;
         this.replaceTarget = replaceTarget;
+        this.veinSinTable = createVeinSinTable(blocksPerVein);
     }
     
     /**
@@ -81,6 +91,23 @@ public class WorldGenMinableExtended extends WorldGenMinable implements IRetroGe
      * @return If generation succeeded.
      */
     protected boolean generate(Chunk chunk, Random rand, int x, int y, int z) {
+        TIntArrayList positions = new TIntArrayList();
+        planVein(rand, x, y, z, positions);
+        applyVeins(chunk, positions);
+        return true;
+    }
+
+    /**
+     * Calculate the positions of a vein in a chunk.
+     * This only depends on the given random and vein origin, so it can be called from any thread.
+     * @param rand Random.
+     * @param x Chunk X.
+     * @param y Chunk Y.
+     * @param z Chunk Z.
+     * @param positions The list to add the packed chunk positions of the vein to,
+     *                  see {@link #packPosition(int, int, int)}.
+     */
+    public void planVein(Random rand, int x, int y, int z, TIntArrayList positions) {
         float f = rand.nextFloat() * (float)Math.PI;
         double d0 = (double)((float)(x + 8) + MathHelper.sin(f) * (float)this.blocksPerVein / 8.0F);
         double d1 = (double)((float)(x + 8) - MathHelper.sin(f) * (float)this.blocksPerVein / 8.0F);
@@ -88,44 +115,37 @@ public class WorldGenMinableExtended extends WorldGenMinable implements IRetroGe
         double d3 = (double)((float)(z + 8) - MathHelper.cos(f) * (float)this.blocksPerVein / 8.0F);
         double d4 = (double)(y + rand.nextInt(3) - 2);
         double d5 = (double)(y + rand.nextInt(3) - 2);
+        float[] sinTable = getVeinSinTable();
 
         for (int l = 0; l <= this.blocksPerVein; ++l) {
             double d6 = d0 + (d1 - d0) * (double)l / (double)this.blocksPerVein;
             double d7 = d4 + (d5 - d4) * (double)l / (double)this.blocksPerVein;
             double d8 = d2 + (d3 - d2) * (double)l / (double)this.blocksPerVein;
             double d9 = rand.nextDouble() * (double)this.blocksPerVein / 16.0D;
-            double d10 = (double)(MathHelper.sin((float) l * (float) Math.PI / (float) this.blocksPerVein) + 1.0F) * d9 + 1.0D;
-            double d11 = (double)(MathHelper.sin((float) l * (float) Math.PI / (float) this.blocksPerVein) + 1.0F) * d9 + 1.0D;
-            int i1 = MathHelper.floor(d6 - d10 / 2.0D);
-            int j1 = MathHelper.floor(d7 - d11 / 2.0D);
-            int k1 = MathHelper.floor(d8 - d10 / 2.0D);
-            int l1 = MathHelper.floor(d6 + d10 / 2.0D);
-            int i2 = MathHelper.floor(d7 + d11 / 2.0D);
-            int j2 = MathHelper.floor(d8 + d10 / 2.0D);
-
-            for (int cx = i1; cx <= l1; ++cx) {
-                double d12 = ((double)cx + 0.5D - d6) / (d10 / 2.0D);
-
-                if (d12 * d12 < 1.0D) {
-                    for (int cy = j1; cy <= i2; ++cy) {
-                        double d13 = ((double)cy + 0.5D - d7) / (d11 / 2.0D);
-
-                        if (d12 * d12 + d13 * d13 < 1.0D) {
-                            for (int cz = k1; cz <= j2; ++cz) {
-                                if(cx > 0 && cx < WorldHelpers.CHUNK_SIZE
-                                		&& cz > 0 && cz < WorldHelpers.CHUNK_SIZE) {
-                                    BlockPos blockPos = new BlockPos(cx, cy, cz);
-	                                ExtendedBlockStorage storage = chunk.getBlockStorageArray()[y >> 4];
-	                                if(storage != null) {
-                                        final IBlockState oldBlockState = chunk.getBlockState(blockPos);
-	                    	            Block oldBlock = oldBlockState.getBlock();
-	                    	            if(oldBlock != null
-	                    	            		&& oldBlockState != state
-	                    	            		&& oldBlock.isReplaceableOreGen(oldBlockState, chunk.getWorld(), blockPos, oldBlockState::equals)
-	                    	            		&& !oldBlock.hasTileEntity(oldBlockState)) { // We do not replace TE's, even if they are replacable.
-	                    	            	storage.set(x, y & 15, z, oldBlockState);
-	                    	            }
-	                                }
+            double d10 = (double)(sinTable[l] + 1.0F) * d9 + 1.0D;
+            double d11 = d10;
+            double halfD10 = d10 / 2.0D;
+            double halfD11 = d11 / 2.0D;
+            // Only the positions inside the chunk (excluding the first column, like before) are kept.
+            int i1 = Math.max(1, MathHelper.floor(d6 - halfD10));
+            int j1 = Math.max(0, MathHelper.floor(d7 - halfD11));
+            int k1 = Math.max(1, MathHelper.floor(d8 - halfD10));
+            int l1 = Math.min(WorldHelpers.CHUNK_SIZE - 1, MathHelper.floor(d6 + halfD10));
+            int i2 = Math.min(255, MathHelper.floor(d7 + halfD11));
+            int j2 = Math.min(WorldHelpers.CHUNK_SIZE - 1, MathHelper.floor(d8 + halfD10));
+
+            if (k1 <= j2) {
+                for (int cx = i1; cx <= l1; ++cx) {
+                    double d12 = ((double)cx + 0.5D - d6) / halfD10;
+                    double d12Sq = d12 * d12;
+
+                    if (d12Sq < 1.0D) {
+                        for (int cy = j1; cy <= i2; ++cy) {
+                            double d13 = ((double)cy + 0.5D - d7) / halfD11;
+
+                            if (d12Sq + d13 * d13 < 1.0D) {
+                                for (int cz = k1; cz <= j2; ++cz) {
+                                    positions.add(packPosition(cx, cy, cz));
                                 }
                             }
                         }
@@ -133,20 +153,141 @@ public class WorldGenMinableExtended extends WorldGenMinable implements IRetroGe
                 }
             }
         }
+    }
 
-        return true;
+    /**
+     * Place the ore at the given positions in the chunk.
+     * Blocks are written directly into the chunk sections, sections that are entirely air are skipped.
+     * Whether or not a block state can be replaced is only determined once per state in each section.
+     * @param chunk The chunk to generate in.
+     * @param positions Packed chunk positions, see {@link #packPosition(int, int, int)}.
+     */
+    public void applyVeins(Chunk chunk, TIntArrayList positions) {
+        ExtendedBlockStorage[] storages = chunk.getBlockStorageArray();
+        ReplaceableTable replaceable = new ReplaceableTable();
+        int tableSection = -1;
+        BlockPos.MutableBlockPos blockPos = new BlockPos.MutableBlockPos();
+        for (int i = 0; i < positions.size(); i++) {
+            int position = positions.getQuick(i);
+            int cx = position & 15;
+            int cz = (position >> 4) & 15;
+            int cy = position >> 8;
+            ExtendedBlockStorage storage = storages[cy >> 4];
+            if (storage != Chunk.NULL_BLOCK_STORAGE && !storage.isEmpty()) {
+                if (tableSection != cy >> 4) {
+                    tableSection = cy >> 4;
+                    replaceable.clear();
+                }
+                IBlockState oldBlockState = storage.get(cx, cy & 15, cz);
+                int index = replaceable.indexOf(oldBlockState);
+                boolean canReplace;
+                if (index < 0) {
+                    blockPos.setPos((chunk.x << 4) + cx, cy, (chunk.z << 4) + cz);
+                    canReplace = canReplace(chunk.getWorld(), blockPos, oldBlockState);
+                    replaceable.add(oldBlockState, canReplace);
+                } else {
+                    canReplace = replaceable.get(index);
+                }
+                if (canReplace) {
+                    storage.set(cx, cy & 15, cz, state);
+                }
+            }
+        }
+    }
+
+    protected boolean canReplace(World world, BlockPos blockPos, IBlockState oldBlockState) {
+        Block oldBlock = oldBlockState.getBlock();
+        return oldBlockState != state
+                && oldBlock.isReplaceableOreGen(oldBlockState, world, blockPos, replacePredicate)
+                && !oldBlock.hasTileEntity(oldBlockState); // We do not replace TE's, even if they are replacable.
+    }
+
+    /**
+     * Pack a position within a chunk into an int.
+     * @param x The x position within the chunk, 0-15.
+     * @param y The y position, 0-255.
+     * @param z The z position within the chunk, 0-15.
+     * @return The packed position.
+     */
+    public static int packPosition(int x, int y, int z) {
+        return (y << 8) | (z << 4) | x;
+    }
+
+    protected float[] getVeinSinTable() {
+        return veinSinTable;
+    }
+
+    private static float[] createVeinSinTable(int blocksPerVein) {
+        float[] sinTable = new float[blocksPerVein + 1];
+        for (int l = 0; l <= blocksPerVein; ++l) {
+            sinTable[l] = MathHelper.sin((float) l * (float) Math.PI / (float) blocksPerVein);
+        }
+        return sinTable;
+    }
+
+    /**
+     * Remembers if the block states of a chunk section can be replaced.
+     * Sections only contain a few distinct states, so a linear scan is used instead of a map.
+     */
+    private static final class ReplaceableTable {
+
+        private IBlockState[] states = new IBlockState[8];
+        private boolean[] replaceable = new boolean[8];
+        private int size = 0;
+
+        public void clear() {
+            Arrays.fill(states, 0, size, null);
+            size = 0;
+        }
+
+        public int indexOf(IBlockState state) {
+            for (int i = 0; i < size; i++) {
+                if (states[i] == state) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        public boolean get(int index) {
+            return replaceable[index];
+        }
+
+        public void add(IBlockState state, boolean canReplace) {
+            if (size == states.length) {
+                states = Arrays.copyOf(states, size * 2);
+                replaceable = Arrays.copyOf(replaceable, size * 2);
+            }
+            states[size] = state;
+            replaceable[size] = canReplace;
+            size++;
+        }
     }
 
 	@Override
 	public void retroGenerateChunk(NBTTagCompound tag, Chunk chunk,
 			Random rand) {
+		applyRetroGenPlan(tag, chunk, planRetroGenChunk(chunk.x, chunk.z, rand));
+	}
+
+	@Override
+	public TIntArrayList planRetroGenChunk(int chunkX, int chunkZ, Random rand) {
+		TIntArrayList positions = new TIntArrayList();
 		for(int k = 0; k < veinsPerChunk; k++){
             int x = rand.nextInt(16);
             int y = startY + rand.nextInt(endY - startY);
             int z = rand.nextInt(16);
-            
-            this.generate(chunk, rand, x, y, z);
+
+            planVein(rand, x, y, z, positions);
         }
+		// Packed positions are ordered by section, so that each section is visited once when applying.
+		positions.sort();
+		return positions;
+	}
+
+	@Override
+	public void applyRetroGenPlan(NBTTagCompound tag, Chunk chunk, TIntArrayList plan) {
+		applyVeins(chunk, plan);
 	}
 
 	@Override
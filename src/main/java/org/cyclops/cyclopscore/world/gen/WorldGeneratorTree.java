@@ -9,7 +9,9 @@ import net.minecraft.init.Blocks;
 import net.minecraft.util.EnumFacing;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.gen.feature.WorldGenerator;
+import org.cyclops.cyclopscore.helper.WorldHelpers;
 
 import java.util.Random;
 
@@ -34,13 +36,10 @@ public abstract class WorldGeneratorTree extends WorldGenerator {
         int retries = blockPos.getY();
         int z = blockPos.getZ();
         for(int c = 0; c < retries; c++) {
-            int y = world.getActualHeight() - 1;
-            BlockPos loopPos = new BlockPos(x, y, z);
-            while(world.isAirBlock(loopPos) && y > 0) {
-                y--;
-            }
+            Chunk chunk = world.getChunkFromChunkCoords(x >> 4, z >> 4);
+            int y = WorldHelpers.getTopBlockY(chunk, x & 15, z & 15, world.getActualHeight() - 1);
 
-            if(!growTree(world, rand, loopPos.add(0, 1, 0))) {
+            if(!growTree(world, rand, new BlockPos(x, y + 1, z))) {
                 retries--;
             }
 
@@ -83,6 +82,8 @@ public abstract class WorldGeneratorTree extends WorldGenerator {
 
             if((block != null && block.canSustainPlant(blockState, world, basePos, EnumFacing.UP,
                     getSapling())) && y < worldHeight - treeHeight - 1) {
+                // Rows in sections that only contain air can always hold the tree
+                int emptySections = WorldHelpers.getEmptySections(world, x - 3, z - 3, x + 3, z + 3);
                 for(yOffset = y; yOffset <= y + 1 + treeHeight; ++yOffset) {
                     byte radius = 1;
 
@@ -96,6 +97,11 @@ public abstract class WorldGeneratorTree extends WorldGenerator {
 
                     // Check if leaves can be placed
                     if(yOffset >= 0 & yOffset < worldHeight) {
+                        if((emptySections & (1 << (yOffset >> 4))) != 0) {
+                            // The last block of a checked row would have been air as well
+                            block = Blocks.AIR;
+                            continue;
+                        }
                         for(xOffset = x - radius; xOffset <= x + radius; ++xOffset) {
                             for(zOffset = z - radius; zOffset <= z + radius; ++zOffset) {
                                 BlockPos loopPos = new BlockPos(xOffset, yOffset, zOffset);
@@ -0,0 +1,146 @@
+package org.cyclops.cyclopscore.datastructure;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import net.minecraft.util.math.BlockPos;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link TickWheel}.
+ * @author rubensworks
+ */
+public class TestTickWheel {
+
+    private static List<BlockPos> createPositions(long seed, int count) {
+        Random random = new Random(seed);
+        Set<BlockPos> positions = Sets.newLinkedHashSet();
+        while (positions.size() < count) {
+            positions.add(new BlockPos(random.nextInt(2000) - 1000, random.nextInt(256), random.nextInt(2000) - 1000));
+        }
+        return Lists.newArrayList(positions);
+    }
+
+    private static TickWheel<BlockPos> createWheel(int interval, List<BlockPos> positions) {
+        TickWheel<BlockPos> wheel = new TickWheel<>(interval);
+        for (BlockPos pos : positions) {
+            wheel.register(pos, TickWheel.hash(pos));
+        }
+        return wheel;
+    }
+
+    @Test
+    public void testSpread() {
+        TickWheel<BlockPos> wheel = createWheel(20, createPositions(0, 10000));
+        assertThat(wheel.size(), is(10000));
+        for (long tick = 0; tick < 20; tick++) {
+            int load = wheel.getDue(tick).size();
+            assertTrue("Load " + load + " at tick " + tick, load >= 495 && load <= 505);
+        }
+    }
+
+    @Test
+    public void testSpreadClustered() {
+        // Tiles that are placed next to each other must be spread as well.
+        List<BlockPos> positions = Lists.newArrayList();
+        for (int x = 0; x < 100; x++) {
+            for (int z = 0; z < 100; z++) {
+                positions.add(new BlockPos(x, 64, z));
+            }
+        }
+        TickWheel<BlockPos> wheel = createWheel(20, positions);
+        for (int load : wheel.getLoads()) {
+            assertTrue("Load " + load, load >= 495 && load <= 505);
+        }
+    }
+
+    @Test
+    public void testDueOncePerInterval() {
+        List<BlockPos> positions = createPositions(1, 1000);
+        TickWheel<BlockPos> wheel = createWheel(7, positions);
+        for (BlockPos pos : positions) {
+            int dueCount = 0;
+            for (long tick = 100; tick < 100 + 7; tick++) {
+                if (wheel.isDue(pos, tick)) {
+                    dueCount++;
+                    assertTrue(wheel.getDue(tick).contains(pos));
+                }
+            }
+            assertThat(dueCount, is(1));
+        }
+    }
+
+    @Test
+    public void testReproducible() {
+        List<BlockPos> positions = createPositions(2, 1000);
+        TickWheel<BlockPos> wheel1 = createWheel(20, positions);
+        TickWheel<BlockPos> wheel2 = createWheel(20, positions);
+        for (long tick = 0; tick < 20; tick++) {
+            assertThat(Lists.newArrayList(wheel1.getDue(tick)), is(Lists.newArrayList(wheel2.getDue(tick))));
+        }
+    }
+
+    @Test
+    public void testUnregister() {
+        List<BlockPos> positions = createPositions(3, 100);
+        TickWheel<BlockPos> wheel = createWheel(20, positions);
+        int slot = wheel.register(positions.get(0), TickWheel.hash(positions.get(0)));
+        int load = wheel.getLoad(slot);
+
+        assertThat(wheel.unregister(positions.get(0)), is(true));
+        assertThat(wheel.unregister(positions.get(0)), is(false));
+        assertThat(wheel.size(), is(99));
+        assertThat(wheel.getLoad(slot), is(load - 1));
+        assertThat(wheel.isDue(positions.get(0), slot), is(false));
+
+        // The freed slot is within the tolerance, so it is reused.
+        BlockPos pos = new BlockPos(5000, 0, 5000);
+        assertThat(wheel.register(pos, slot), is(slot));
+    }
+
+    @Test
+    public void testTolerance() {
+        TickWheel<BlockPos> wheel = new TickWheel<>(4, 2);
+        for (int i = 0; i < 3; i++) {
+            assertThat(wheel.register(new BlockPos(i, 0, 0), 0), is(0));
+        }
+        assertThat(wheel.register(new BlockPos(3, 0, 0), 0), is(1));
+    }
+
+    @Test
+    public void testOrderIndependentWithinTolerance() {
+        // Entries stay in their hash slot when the tolerance is not exceeded, regardless of registration order.
+        List<BlockPos> positions = createPositions(4, 100);
+        TickWheel<BlockPos> wheel1 = new TickWheel<>(20, 100);
+        TickWheel<BlockPos> wheel2 = new TickWheel<>(20, 100);
+        for (BlockPos pos : positions) {
+            wheel1.register(pos, TickWheel.hash(pos));
+        }
+        for (BlockPos pos : Lists.reverse(positions)) {
+            wheel2.register(pos, TickWheel.hash(pos));
+        }
+        for (BlockPos pos : positions) {
+            for (long tick = 0; tick < 20; tick++) {
+                assertThat(wheel1.isDue(pos, tick), is(wheel2.isDue(pos, tick)));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTolerance() {
+        new TickWheel<BlockPos>(20, -1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidInterval() {
+        new TickWheel<BlockPos>(0);
+    }
+
+}
@@ -0,0 +1,253 @@
+package org.cyclops.cyclopscore.helper;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import net.minecraft.block.material.Material;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Blocks;
+import net.minecraft.init.Bootstrap;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit tests for {@link WorldHelpers}.
+ * @author rubensworks
+ */
+public class TestWorldHelpers {
+
+    static {
+        Bootstrap.register();
+    }
+
+    private static final IBlockState[] STATES = new IBlockState[]{
+            Blocks.AIR.getDefaultState(),
+            Blocks.STONE.getDefaultState(),
+            Blocks.GLASS.getDefaultState(),
+            Blocks.LEAVES.getDefaultState(),
+            Blocks.TALLGRASS.getDefaultState(),
+    };
+
+    @Test
+    public void testGetTopBlockYEmpty() {
+        Chunk chunk = createChunk(new Random(0), 0);
+        assertThat(WorldHelpers.getTopBlockY(chunk, 0, 0, 255), is(-1));
+    }
+
+    @Test
+    public void testGetTopBlockYMatchesScan() {
+        for(long seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            Chunk chunk = createChunk(random, 128);
+            for(int maxY : new int[]{255, 127, 63}) {
+                for(int x = 0; x < 16; x++) {
+                    for(int z = 0; z < 16; z++) {
+                        assertThat("Seed " + seed + " at " + x + ":" + z + " below " + maxY,
+                                WorldHelpers.getTopBlockY(chunk, x, z, maxY), is(getTopBlockYScan(chunk, x, z, maxY)));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testForEachInAreaMatchesFoldArea() {
+        for(long seed = 0; seed < 5; seed++) {
+            Random random = new Random(seed);
+            WorldDummy world = createWorld(seed);
+            BlockPos min = new BlockPos(random.nextInt(40) - 20, random.nextInt(300) - 20, random.nextInt(40) - 20);
+            BlockPos max = min.add(random.nextInt(40), random.nextInt(40), random.nextInt(40));
+
+            Map<BlockPos, IBlockState> expected = getBlockStatesFolded(world, min, max);
+            Map<BlockPos, IBlockState> actual = Maps.newHashMap();
+            int[] visits = new int[1];
+            WorldHelpers.forEachInArea(world, min, max, (blockState, pos) -> {
+                actual.put(pos.toImmutable(), blockState);
+                visits[0]++;
+            });
+            assertThat("Seed " + seed + " from " + min + " to " + max, actual, is(expected));
+            assertThat("Seed " + seed + " visits each position once", visits[0], is(expected.size()));
+        }
+    }
+
+    @Test
+    public void testForEachInAreaClampsHeight() {
+        WorldDummy world = createWorld(0);
+        Set<BlockPos> positions = Sets.newHashSet();
+        WorldHelpers.forEachInArea(world, new BlockPos(-2, -10, -2), new BlockPos(2, 300, 2),
+                (blockState, pos) -> positions.add(pos.toImmutable()));
+        assertThat(positions.size(), is(5 * 256 * 5));
+        for(BlockPos pos : positions) {
+            assertThat(pos.getY() >= 0 && pos.getY() < 256, is(true));
+        }
+    }
+
+    @Test
+    public void testFindInArea() {
+        for(long seed = 0; seed < 5; seed++) {
+            WorldDummy world = createWorld(seed);
+            BlockPos min = new BlockPos(-17, 50, -3);
+            BlockPos max = new BlockPos(14, 90, 20);
+            Map<BlockPos, IBlockState> expected = getBlockStatesFolded(world, min, max);
+            for(IBlockState state : STATES) {
+                BlockPos found = WorldHelpers.findInArea(world, min, max, (blockState, pos) -> blockState == state);
+                if(expected.containsValue(state)) {
+                    assertThat("Seed " + seed + " finds " + state, found, notNullValue());
+                    assertThat("Seed " + seed + " finds " + state, expected.get(found), is(state));
+                } else {
+                    assertThat("Seed " + seed + " does not find " + state, found, nullValue());
+                }
+            }
+            assertThat(WorldHelpers.findInArea(world, min, max, (blockState, pos) -> false), nullValue());
+        }
+    }
+
+    @Test
+    public void testSnapshotArea() {
+        for(long seed = 0; seed < 5; seed++) {
+            Random random = new Random(seed);
+            WorldDummy world = createWorld(seed);
+            BlockPos min = new BlockPos(random.nextInt(40) - 20, random.nextInt(300) - 20, random.nextInt(40) - 20);
+            BlockPos max = min.add(random.nextInt(20), random.nextInt(20), random.nextInt(20));
+            WorldHelpers.AreaSnapshot snapshot = WorldHelpers.snapshotArea(world, min, max);
+
+            // Positions outside of the world height are folded as air, like they are captured in the snapshot.
+            Map<BlockPos, IBlockState> expected = WorldHelpers.foldArea(world, new int[]{0, 0, 0},
+                    new int[]{max.getX() - min.getX(), max.getY() - min.getY(), max.getZ() - min.getZ()}, min,
+                    (map, w, pos) -> {
+                        map.put(pos, w.getBlockState(pos));
+                        return map;
+                    }, Maps.<BlockPos, IBlockState>newHashMap());
+            Map<BlockPos, IBlockState> actual = snapshot.fold((map, blockState, pos) -> {
+                map.put(pos.toImmutable(), blockState);
+                return map;
+            }, Maps.<BlockPos, IBlockState>newHashMap());
+            assertThat("Seed " + seed + " from " + min + " to " + max, actual, is(expected));
+
+            Set<Integer> indexes = Sets.newHashSet();
+            for(Map.Entry<BlockPos, IBlockState> entry : expected.entrySet()) {
+                BlockPos pos = entry.getKey();
+                assertThat(snapshot.getBlockState(pos), is(entry.getValue()));
+                int index = snapshot.getIndex(pos.getX(), pos.getY(), pos.getZ());
+                assertThat("Index " + index + " is in range", index >= 0 && index < expected.size(), is(true));
+                indexes.add(index);
+            }
+            assertThat("Indexes are unique", indexes.size(), is(expected.size()));
+            assertThat(snapshot.getBlockState(min.add(-1, 0, 0)), is(Blocks.AIR.getDefaultState()));
+            assertThat(snapshot.getBlockState(max.add(0, 0, 1)), is(Blocks.AIR.getDefaultState()));
+        }
+    }
+
+    /**
+     * Create a world in which each chunk is created like {@link #createChunk(Random, int)}.
+     * @param seed The world seed.
+     * @return The world.
+     */
+    protected static WorldDummy createWorld(long seed) {
+        return new WorldDummy(seed, (world, chunk, random) -> createChunk(chunk, random, 32));
+    }
+
+    /**
+     * The reference implementation that folds over all positions within the world height in the area.
+     */
+    protected static Map<BlockPos, IBlockState> getBlockStatesFolded(World world, BlockPos min, BlockPos max) {
+        return WorldHelpers.foldArea(world, new int[]{0, 0, 0},
+                new int[]{max.getX() - min.getX(), max.getY() - min.getY(), max.getZ() - min.getZ()}, min,
+                (map, w, pos) -> {
+                    if(!w.isOutsideBuildHeight(pos)) {
+                        map.put(pos, w.getBlockState(pos));
+                    }
+                    return map;
+                }, Maps.<BlockPos, IBlockState>newHashMap());
+    }
+
+    /**
+     * Create a chunk with random terrain, random transparent blocks and floating blocks above it,
+     * and an up-to-date heightmap.
+     * @param random The random.
+     * @param blocksPerColumn The amount of random blocks to place in each column.
+     * @return The chunk.
+     */
+    protected static Chunk createChunk(Random random, int blocksPerColumn) {
+        return createChunk(new Chunk(null, 0, 0), random, blocksPerColumn);
+    }
+
+    /**
+     * Fill the given chunk like {@link #createChunk(Random, int)}.
+     * @param chunk An empty chunk.
+     * @param random The random.
+     * @param blocksPerColumn The amount of random blocks to place in each column.
+     * @return The chunk.
+     */
+    protected static Chunk createChunk(Chunk chunk, Random random, int blocksPerColumn) {
+        ExtendedBlockStorage[] storages = chunk.getBlockStorageArray();
+        for(int x = 0; x < 16; x++) {
+            for(int z = 0; z < 16; z++) {
+                int groundY = random.nextInt(200);
+                for(int y = 0; y < groundY; y++) {
+                    setBlockState(storages, x, y, z, Blocks.STONE.getDefaultState());
+                }
+                for(int i = 0; i < blocksPerColumn; i++) {
+                    int y = groundY + (int) Math.abs(random.nextGaussian() * 24);
+                    if(y < 256) {
+                        setBlockState(storages, x, y, z, STATES[random.nextInt(STATES.length)]);
+                    }
+                }
+            }
+        }
+        // Allocated sections that only contain air must be skipped as well
+        if(storages[15] == Chunk.NULL_BLOCK_STORAGE) {
+            storages[15] = new ExtendedBlockStorage(15 << 4, true);
+        }
+
+        int[] heightMap = chunk.getHeightMap();
+        for(int x = 0; x < 16; x++) {
+            for(int z = 0; z < 16; z++) {
+                int height = 0;
+                for(int y = 255; y >= 0 && height == 0; y--) {
+                    if(getBlockState(storages, x, y, z).getLightOpacity() > 0) {
+                        height = y + 1;
+                    }
+                }
+                heightMap[z << 4 | x] = height;
+            }
+        }
+        return chunk;
+    }
+
+    protected static void setBlockState(ExtendedBlockStorage[] storages, int x, int y, int z, IBlockState blockState) {
+        if(storages[y >> 4] == Chunk.NULL_BLOCK_STORAGE) {
+            storages[y >> 4] = new ExtendedBlockStorage(y >> 4 << 4, true);
+        }
+        storages[y >> 4].set(x, y & 15, z, blockState);
+    }
+
+    protected static IBlockState getBlockState(ExtendedBlockStorage[] storages, int x, int y, int z) {
+        ExtendedBlockStorage storage = storages[y >> 4];
+        return storage == Chunk.NULL_BLOCK_STORAGE ? Blocks.AIR.getDefaultState() : storage.get(x, y & 15, z);
+    }
+
+    /**
+     * The reference implementation that checks every block from the top down.
+     */
+    protected static int getTopBlockYScan(Chunk chunk, int x, int z, int maxY) {
+        for(int y = maxY; y >= 0; y--) {
+            if(getBlockState(chunk.getBlockStorageArray(), x, y, z).getMaterial() != Material.AIR) {
+                return y;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,150 @@
+package org.cyclops.cyclopscore.helper;
+
+import com.google.common.collect.Maps;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.profiler.Profiler;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.GameType;
+import net.minecraft.world.World;
+import net.minecraft.world.WorldProviderSurface;
+import net.minecraft.world.WorldSettings;
+import net.minecraft.world.WorldType;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.IChunkProvider;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import net.minecraft.world.storage.WorldInfo;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A world for unit tests, in which all chunks are loaded, and are filled on first access.
+ * Block changes are written directly into the chunk sections, without lighting or block updates.
+ * @author rubensworks
+ */
+public class WorldDummy extends World {
+
+    private final long seed;
+    private final IChunkFiller chunkFiller;
+    private final Map<Long, Chunk> chunks = Maps.newHashMap();
+
+    public WorldDummy(long seed, IChunkFiller chunkFiller) {
+        super(null, new WorldInfo(new WorldSettings(seed, GameType.SURVIVAL, false, false, WorldType.DEFAULT), "test"),
+                new WorldProviderSurface(), new Profiler(), false);
+        this.seed = seed;
+        this.chunkFiller = chunkFiller;
+        this.chunkProvider = createChunkProvider();
+    }
+
+    @Override
+    protected IChunkProvider createChunkProvider() {
+        return new IChunkProvider() {
+            @Nullable
+            @Override
+            public Chunk getLoadedChunk(int x, int z) {
+                return getChunkFromChunkCoords(x, z);
+            }
+
+            @Override
+            public Chunk provideChunk(int x, int z) {
+                return getChunkFromChunkCoords(x, z);
+            }
+
+            @Override
+            public boolean tick() {
+                return false;
+            }
+
+            @Override
+            public String makeString() {
+                return "WorldDummy";
+            }
+
+            @Override
+            public boolean isChunkGeneratedAt(int x, int z) {
+                return true;
+            }
+        };
+    }
+
+    @Override
+    protected boolean isChunkLoaded(int x, int z, boolean allowEmpty) {
+        return true;
+    }
+
+    @Override
+    public int getHeight() {
+        return 256;
+    }
+
+    @Override
+    public int getActualHeight() {
+        return 256;
+    }
+
+    @Override
+    public Chunk getChunkFromChunkCoords(int chunkX, int chunkZ) {
+        long key = ChunkPos.asLong(chunkX, chunkZ);
+        Chunk chunk = chunks.get(key);
+        if(chunk == null) {
+            chunk = new Chunk(this, chunkX, chunkZ);
+            // Register the chunk first, so that the filler can set blocks through this world.
+            chunks.put(key, chunk);
+            chunkFiller.fill(this, chunk, new Random(seed ^ key));
+        }
+        return chunk;
+    }
+
+    @Override
+    public boolean setBlockState(BlockPos pos, IBlockState newState, int flags) {
+        if(isOutsideBuildHeight(pos)) {
+            return false;
+        }
+        Chunk chunk = getChunkFromBlockCoords(pos);
+        ExtendedBlockStorage[] storages = chunk.getBlockStorageArray();
+        int x = pos.getX() & 15;
+        int y = pos.getY();
+        int z = pos.getZ() & 15;
+        if(storages[y >> 4] == Chunk.NULL_BLOCK_STORAGE) {
+            storages[y >> 4] = new ExtendedBlockStorage(y >> 4 << 4, true);
+        }
+        storages[y >> 4].set(x, y & 15, z, newState);
+
+        // Keep the heightmap up to date, it contains the Y coordinate above the highest opaque block.
+        int[] heightMap = chunk.getHeightMap();
+        int height = heightMap[z << 4 | x];
+        if(newState.getLightOpacity() > 0) {
+            if(y + 1 > height) {
+                heightMap[z << 4 | x] = y + 1;
+            }
+        } else if(y + 1 == height) {
+            int newHeight = 0;
+            for(int yc = y - 1; yc >= 0 && newHeight == 0; yc--) {
+                ExtendedBlockStorage storage = storages[yc >> 4];
+                if(storage != Chunk.NULL_BLOCK_STORAGE && storage.get(x, yc & 15, z).getLightOpacity() > 0) {
+                    newHeight = yc + 1;
+                }
+            }
+            heightMap[z << 4 | x] = newHeight;
+        }
+        return true;
+    }
+
+    /**
+     * Fills new chunks of a {@link WorldDummy}.
+     */
+    public static interface IChunkFiller {
+
+        /**
+         * Fill the given empty chunk.
+         * @param world The world, blocks can be set through it.
+         * @param chunk The chunk.
+         * @param random A random that only depends on the world seed and the chunk position.
+         */
+        public void fill(WorldDummy world, Chunk chunk, Random random);
+
+    }
+
+}
@@ -1,12 +1,23 @@
 package org.cyclops.cyclopscore.inventory;
 
+import com.google.common.collect.Lists;
 import net.minecraft.init.Bootstrap;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraftforge.items.wrapper.InvWrapper;
+import org.cyclops.commoncapabilities.api.capability.itemhandler.ItemMatch;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 
 /**
@@ -1456,4 +1467,203 @@ public class TestIndexedInventory {
         assertThat("Index has incorrect contents", inv.getIndex().get(ITEM2).get(1), is(STACK2));
     }
 
+    /* ----- ----- ----- LARGE ----- ----- -----  */
+
+    @Test
+    public void testLargeRandomOperations() {
+        int size = 1000;
+        IndexedInventory inv = new IndexedInventory(size, "test", 64);
+        inv.createIndex();
+        Random random = new Random(123);
+
+        for (int i = 0; i < 10000; i++) {
+            int slot = random.nextInt(size);
+            inv.setInventorySlotContents(slot, random.nextBoolean() ? ItemStack.EMPTY : new ItemStack(ITEM1));
+
+            if (i % 100 == 0) {
+                assertBoundaries(inv);
+            }
+        }
+        assertBoundaries(inv);
+
+        // Drain all slots from the front, like an extracting pipe
+        while (inv.getFirstNonEmptySlot() >= 0) {
+            inv.setInventorySlotContents(inv.getFirstNonEmptySlot(), ItemStack.EMPTY);
+        }
+        assertBoundaries(inv);
+        assertThat("First empty slot is incorrect", inv.getFirstEmptySlot(), is(0));
+        assertThat("Last empty slot is incorrect", inv.getLastEmptySlot(), is(size - 1));
+    }
+
+    @Test
+    public void testClear() {
+        IndexedInventory inv = new IndexedInventory(3, "test", 64);
+        inv.createIndex();
+
+        inv.setInventorySlotContents(1, STACK1);
+        inv.clear();
+
+        assertThat("First empty slot is incorrect", inv.getFirstEmptySlot(), is(0));
+        assertThat("Last empty slot is incorrect", inv.getLastEmptySlot(), is(2));
+        assertThat("First non-empty slot is incorrect", inv.getFirstNonEmptySlot(), is(-1));
+        assertThat("Last non-empty slot is incorrect", inv.getLastNonEmptySlot(), is(-1));
+        assertThat("Index is not empty", inv.getIndex().size(), is(0));
+    }
+
+    @Test
+    public void testIterateSlots() {
+        IndexedInventory inv = new IndexedInventory(5, "test", 64);
+        inv.createIndex();
+        IndexedSlotlessItemHandlerWrapper wrapper = new IndexedSlotlessItemHandlerWrapper(new InvWrapper(inv), inv);
+
+        inv.setInventorySlotContents(1, STACK1);
+        inv.setInventorySlotContents(4, STACK2);
+
+        assertThat("Empty slots are incorrect", toList(wrapper.getEmptySlots()), is(Arrays.asList(0, 2, 3)));
+        assertThat("Non-empty slots are incorrect", toList(wrapper.getNonEmptySlots()), is(Arrays.asList(1, 4)));
+
+        inv.setInventorySlotContents(0, STACK3);
+        inv.setInventorySlotContents(2, STACK1_1);
+        inv.setInventorySlotContents(3, STACK1_2);
+
+        assertThat("Empty slots are incorrect", toList(wrapper.getEmptySlots()), is(Collections.<Integer>emptyList()));
+        assertThat("Non-empty slots are incorrect", toList(wrapper.getNonEmptySlots()), is(Arrays.asList(0, 1, 2, 3, 4)));
+    }
+
+    @Test
+    public void testVariantCounts() {
+        IndexedInventory inv = new IndexedInventory(5, "test", 64);
+        inv.createIndex();
+        NBTTagCompound tag = new NBTTagCompound();
+        tag.setBoolean("a", true);
+        ItemStack stackTag = new ItemStack(ITEM1, 3, 0);
+        stackTag.setTagCompound(tag);
+
+        inv.setInventorySlotContents(0, new ItemStack(ITEM1, 10, 0));
+        inv.setInventorySlotContents(1, new ItemStack(ITEM1, 5, 1));
+        inv.setInventorySlotContents(2, new ItemStack(ITEM1, 7, 0));
+        inv.setInventorySlotContents(3, stackTag);
+        inv.setInventorySlotContents(4, new ItemStack(ITEM2, 2, 0));
+
+        int exact = ItemMatch.ITEM | ItemMatch.DAMAGE | ItemMatch.NBT;
+        assertThat("Exact count is incorrect", inv.getCount(new ItemStack(ITEM1, 1, 0), exact), is(17L));
+        assertThat("Exact count is incorrect", inv.getCount(new ItemStack(ITEM1, 1, 1), exact), is(5L));
+        assertThat("Exact count is incorrect", inv.getCount(stackTag, exact), is(3L));
+        assertThat("Item count is incorrect", inv.getCount(new ItemStack(ITEM1), ItemMatch.ITEM), is(25L));
+        assertThat("Any count is incorrect", inv.getCount(new ItemStack(ITEM1), ItemMatch.ANY), is(27L));
+        assertThat("Variant slots are incorrect", inv.getVariantSlots(new ItemStack(ITEM1, 1, 0)).size(), is(2));
+
+        inv.decrStackSize(0, 4);
+        inv.setInventorySlotContents(2, ItemStack.EMPTY);
+        assertThat("Exact count is incorrect", inv.getCount(new ItemStack(ITEM1, 1, 0), exact), is(6L));
+        assertThat("Variant slots are incorrect", inv.getVariantSlots(new ItemStack(ITEM1, 1, 0)).size(), is(1));
+
+        inv.setInventorySlotContents(1, ItemStack.EMPTY);
+        assertThat("Removed variant is present", inv.getVariantSlots(new ItemStack(ITEM1, 1, 1)), nullValue());
+        assertThat("Removed variant count is incorrect", inv.getCount(new ItemStack(ITEM1, 1, 1), exact), is(0L));
+    }
+
+    @Test
+    public void testVariantCountsModifiedInPlace() {
+        IndexedInventory inv = new IndexedInventory(3, "test", 64);
+        inv.createIndex();
+        ItemStack stack0 = new ItemStack(ITEM1, 10, 0);
+        ItemStack stack1 = new ItemStack(ITEM1, 5, 0);
+        ItemStack stack2 = new ItemStack(ITEM2, 2, 0);
+        inv.setInventorySlotContents(0, stack0);
+        inv.setInventorySlotContents(1, stack1);
+        inv.setInventorySlotContents(2, stack2);
+
+        int exact = ItemMatch.ITEM | ItemMatch.DAMAGE | ItemMatch.NBT;
+        stack0.shrink(3);
+        NBTTagCompound tag = new NBTTagCompound();
+        tag.setBoolean("a", true);
+        stack1.setTagCompound(tag);
+        inv.resyncVariants();
+        assertThat("Shrunk count is incorrect", inv.getCount(new ItemStack(ITEM1, 1, 0), exact), is(7L));
+        ItemStack stackTag = new ItemStack(ITEM1, 1, 0);
+        stackTag.setTagCompound(tag.copy());
+        assertThat("Tagged count is incorrect", inv.getCount(stackTag, exact), is(5L));
+        assertThat("Item count is incorrect", inv.getCount(new ItemStack(ITEM1), ItemMatch.ITEM), is(12L));
+
+        stack2.shrink(2);
+        inv.resyncVariants();
+        assertThat("Emptied variant is present", inv.getVariantSlots(new ItemStack(ITEM2)), nullValue());
+        assertThat("Emptied slot is not empty", inv.getFirstEmptySlot(), is(2));
+    }
+
+    @Test
+    public void testVariantCountsNotResyncedOnMarkDirty() {
+        IndexedInventory inv = new IndexedInventory(1, "test", 64);
+        inv.createIndex();
+        ItemStack stack = new ItemStack(ITEM1, 10, 0);
+        inv.setInventorySlotContents(0, stack);
+
+        int exact = ItemMatch.ITEM | ItemMatch.DAMAGE | ItemMatch.NBT;
+        stack.shrink(3);
+        inv.markDirty();
+        assertThat("In-place change is picked up without resync", inv.getCount(new ItemStack(ITEM1, 1, 0), exact), is(10L));
+        inv.resyncVariants();
+        assertThat("Resynced count is incorrect", inv.getCount(new ItemStack(ITEM1, 1, 0), exact), is(7L));
+    }
+
+    @Test
+    public void testVariantCountsDecrStackSize() {
+        IndexedInventory inv = new IndexedInventory(2, "test", 64);
+        inv.createIndex();
+        inv.setInventorySlotContents(0, new ItemStack(ITEM1, 10, 0));
+        inv.setInventorySlotContents(1, new ItemStack(ITEM1, 5, 0));
+
+        int exact = ItemMatch.ITEM | ItemMatch.DAMAGE | ItemMatch.NBT;
+        InvWrapper wrapper = new InvWrapper(inv);
+        assertThat(wrapper.extractItem(0, 4, false).getCount(), is(4));
+        assertThat("Decreased count is incorrect", inv.getCount(new ItemStack(ITEM1, 1, 0), exact), is(11L));
+        assertThat(inv.decrStackSize(1, 5).getCount(), is(5));
+        assertThat("Emptied count is incorrect", inv.getCount(new ItemStack(ITEM1, 1, 0), exact), is(6L));
+        assertThat("Variant slots are incorrect", inv.getVariantSlots(new ItemStack(ITEM1, 1, 0)).size(), is(1));
+    }
+
+    @Test
+    public void testVariantCountsOverLimit() {
+        IndexedInventory inv = new IndexedInventory(2, "test", 16);
+        inv.createIndex();
+        inv.setInventorySlotContents(0, new ItemStack(ITEM1, 40, 0));
+        inv.setInventorySlotContents(1, new ItemStack(ITEM1, 3, 0));
+
+        int exact = ItemMatch.ITEM | ItemMatch.DAMAGE | ItemMatch.NBT;
+        assertThat("Stack is not clamped", inv.getStackInSlot(0).getCount(), is(16));
+        assertThat("Clamped count is incorrect", inv.getCount(new ItemStack(ITEM1, 1, 0), exact), is(19L));
+        inv.setInventorySlotContents(0, ItemStack.EMPTY);
+        assertThat("Count after removal is incorrect", inv.getCount(new ItemStack(ITEM1, 1, 0), exact), is(3L));
+    }
+
+    private static List<Integer> toList(PrimitiveIterator.OfInt it) {
+        List<Integer> list = Lists.newArrayList();
+        while (it.hasNext()) {
+            list.add(it.nextInt());
+        }
+        return list;
+    }
+
+    private static void assertBoundaries(IndexedInventory inv) {
+        int firstEmpty = -1, lastEmpty = -1, firstNonEmpty = -1, lastNonEmpty = -1;
+        for (int i = 0; i < inv.getSizeInventory(); i++) {
+            if (inv.getStackInSlot(i).isEmpty()) {
+                if (firstEmpty < 0) {
+                    firstEmpty = i;
+                }
+                lastEmpty = i;
+            } else {
+                if (firstNonEmpty < 0) {
+                    firstNonEmpty = i;
+                }
+                lastNonEmpty = i;
+            }
+        }
+        assertThat("First empty slot is incorrect", inv.getFirstEmptySlot(), is(firstEmpty));
+        assertThat("Last empty slot is incorrect", inv.getLastEmptySlot(), is(lastEmpty));
+        assertThat("First non-empty slot is incorrect", inv.getFirstNonEmptySlot(), is(firstNonEmpty));
+        assertThat("Last non-empty slot is incorrect", inv.getLastNonEmptySlot(), is(lastNonEmpty));
+    }
+
 }
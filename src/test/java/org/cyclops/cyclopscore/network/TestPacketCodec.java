@@ -163,6 +163,31 @@ public class TestPacketCodec {
         assertThat("Input equals output", packet1.value, equalTo(packet2.value));
     }
 
+    @Test
+    public void testListDense() {
+        ListPacketCodec packet1 = new ListPacketCodec();
+        List<String> list = Lists.newArrayList();
+        list.add("a");
+        list.add("b");
+        list.add("ghjkbvf");
+        packet1.value = list;
+        ListPacketCodec packet2 = new ListPacketCodec();
+        encodeDecode(packet1, packet2);
+        assertThat("Input equals output", packet1.value, equalTo(packet2.value));
+    }
+
+    @Test
+    public void testListOnlyNull() {
+        ListPacketCodec packet1 = new ListPacketCodec();
+        List<String> list = Lists.newArrayList();
+        list.add(null);
+        list.add(null);
+        packet1.value = list;
+        ListPacketCodec packet2 = new ListPacketCodec();
+        encodeDecode(packet1, packet2);
+        assertThat("Input equals output", packet1.value, equalTo(packet2.value));
+    }
+
     //@Test
     //@Ignore // Not yet supported
     public void testMapList() {
@@ -0,0 +1,157 @@
+package org.cyclops.cyclopscore.recipe.custom;
+
+import net.minecraft.init.Bootstrap;
+import net.minecraft.init.Items;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraftforge.fluids.FluidRegistry;
+import net.minecraftforge.fluids.FluidStack;
+import net.minecraftforge.oredict.OreDictionary;
+import net.minecraftforge.oredict.OreIngredient;
+import org.cyclops.cyclopscore.recipe.custom.api.IMachine;
+import org.cyclops.cyclopscore.recipe.custom.api.IRecipe;
+import org.cyclops.cyclopscore.recipe.custom.api.IRecipeInput;
+import org.cyclops.cyclopscore.recipe.custom.api.IRecipeOutput;
+import org.cyclops.cyclopscore.recipe.custom.api.IRecipeProperties;
+import org.cyclops.cyclopscore.recipe.custom.api.IRecipeRegistry;
+import org.cyclops.cyclopscore.recipe.custom.component.FluidStackRecipeComponent;
+import org.cyclops.cyclopscore.recipe.custom.component.IngredientRecipeComponent;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit tests for the input index of {@link RecipeRegistry}.
+ * @author rubensworks
+ */
+public class TestRecipeRegistry {
+
+    static {
+        Bootstrap.register();
+    }
+
+    private static final String ORE = "ingotCyclopsCoreTest";
+
+    private SuperRecipeRegistry.RecipeList recipes;
+    private RecipeRegistry<Machine, IRecipeInput, IRecipeOutput, IRecipeProperties> registry;
+    private IRecipe<IRecipeInput, IRecipeOutput, IRecipeProperties> recipeExact;
+    private IRecipe<IRecipeInput, IRecipeOutput, IRecipeProperties> recipeOre;
+    private IRecipe<IRecipeInput, IRecipeOutput, IRecipeProperties> recipeFluid;
+    private IRecipe<IRecipeInput, IRecipeOutput, IRecipeProperties> recipeUnindexed;
+    private IRecipe<IRecipeInput, IRecipeOutput, IRecipeProperties> recipeLast;
+
+    @Before
+    public void beforeEach() {
+        recipes = new SuperRecipeRegistry.RecipeList();
+        registry = new RecipeRegistry<Machine, IRecipeInput, IRecipeOutput, IRecipeProperties>(new Machine(), null) {
+            @SuppressWarnings("rawtypes")
+            @Override
+            protected List<IRecipe> getRecipeList() {
+                return recipes;
+            }
+        };
+        OreDictionary.registerOre(ORE, new ItemStack(Items.BRICK));
+        recipeExact = registry.registerRecipe(item(Items.IRON_INGOT), item(Items.GOLD_NUGGET), null);
+        recipeOre = registry.registerRecipe(new IngredientRecipeComponent(new OreIngredient(ORE)), item(Items.GOLD_NUGGET), null);
+        recipeFluid = registry.registerRecipe(new FluidStackRecipeComponent(new FluidStack(FluidRegistry.WATER, 1000)),
+                item(Items.GOLD_NUGGET), null);
+        // Subclasses of the components are never indexed.
+        recipeUnindexed = registry.registerRecipe(new IngredientRecipeComponent(new ItemStack(Items.DIAMOND)) {},
+                item(Items.GOLD_NUGGET), null);
+        recipeLast = registry.registerRecipe(item(Items.GOLD_INGOT), item(Items.GOLD_NUGGET), null);
+    }
+
+    private static IngredientRecipeComponent item(Item item) {
+        return new IngredientRecipeComponent(new ItemStack(item));
+    }
+
+    private void assertFound(IRecipeInput input, IRecipe<IRecipeInput, IRecipeOutput, IRecipeProperties> expected) {
+        assertThat("Lookup of " + input, registry.findRecipeByInput(input), is(expected));
+        assertThat("Lookup of " + input + " matches a full scan",
+                registry.findRecipeByInput(input), is(registry.findRecipe(registry.createInputMatcher(input))));
+        assertThat("Lookup of all recipes for " + input + " matches a full scan",
+                registry.findRecipesByInput(input), is(registry.findRecipes(registry.createInputMatcher(input))));
+    }
+
+    @Test
+    public void testExact() {
+        assertFound(item(Items.IRON_INGOT), recipeExact);
+        assertFound(item(Items.GOLD_INGOT), recipeLast);
+        assertFound(item(Items.COAL), null);
+    }
+
+    @Test
+    public void testOre() {
+        assertFound(item(Items.BRICK), recipeOre);
+        assertFound(new IngredientRecipeComponent(new OreIngredient(ORE)), recipeOre);
+    }
+
+    @Test
+    public void testOreRegisteredAfterLookup() {
+        assertFound(item(Items.BRICK), recipeOre);
+        OreDictionary.registerOre(ORE, new ItemStack(Items.NETHERBRICK));
+        assertFound(item(Items.NETHERBRICK), recipeOre);
+    }
+
+    @Test
+    public void testFluid() {
+        assertFound(new FluidStackRecipeComponent(new FluidStack(FluidRegistry.WATER, 1)), recipeFluid);
+        assertFound(new FluidStackRecipeComponent(new FluidStack(FluidRegistry.LAVA, 1)), null);
+    }
+
+    @Test
+    public void testUnindexed() {
+        assertFound(item(Items.DIAMOND), recipeUnindexed);
+    }
+
+    @Test
+    public void testSet() {
+        assertFound(item(Items.IRON_INGOT), recipeExact);
+        IRecipe<IRecipeInput, IRecipeOutput, IRecipeProperties> recipeCoal =
+                new Recipe<IRecipeInput, IRecipeOutput, IRecipeProperties>(item(Items.COAL), item(Items.GOLD_NUGGET), null);
+        recipes.set(recipes.indexOf(recipeExact), recipeCoal);
+        assertFound(item(Items.IRON_INGOT), null);
+        assertFound(item(Items.COAL), recipeCoal);
+    }
+
+    @Test
+    public void testRemove() {
+        assertFound(item(Items.GOLD_INGOT), recipeLast);
+        assertThat(registry.unregisterRecipe(recipeExact), is(recipeExact));
+        assertFound(item(Items.IRON_INGOT), null);
+        assertFound(item(Items.GOLD_INGOT), recipeLast);
+
+        recipes.remove(recipeLast);
+        assertFound(item(Items.GOLD_INGOT), null);
+        assertThat(registry.findRecipeByInput(item(Items.DIAMOND)), is(recipeUnindexed));
+    }
+
+    @Test
+    public void testNextCandidate() {
+        BitSet a = new BitSet();
+        a.set(1);
+        a.set(5);
+        BitSet b = new BitSet();
+        b.set(3);
+        b.set(5);
+        BitSet[] candidates = new BitSet[]{a, b};
+        assertThat(RecipeRegistry.nextCandidate(candidates, 0), is(1));
+        assertThat(RecipeRegistry.nextCandidate(candidates, 2), is(3));
+        assertThat(RecipeRegistry.nextCandidate(candidates, 4), is(5));
+        assertThat(RecipeRegistry.nextCandidate(candidates, 6), is(-1));
+        assertThat(RecipeRegistry.nextCandidate(new BitSet[0], 0), is(-1));
+    }
+
+    private static class Machine implements IMachine<Machine, IRecipeInput, IRecipeOutput, IRecipeProperties> {
+        @Override
+        public IRecipeRegistry<Machine, IRecipeInput, IRecipeOutput, IRecipeProperties> getRecipeRegistry() {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+package org.cyclops.cyclopscore.world.gen;
+
+import gnu.trove.list.array.TIntArrayList;
+import net.minecraft.init.Blocks;
+import net.minecraft.init.Bootstrap;
+import net.minecraft.util.math.MathHelper;
+import org.cyclops.cyclopscore.helper.WorldHelpers;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit tests for {@link WorldGenMinableExtended}.
+ * @author rubensworks
+ */
+public class TestWorldGenMinableExtended {
+
+    static {
+        Bootstrap.register();
+    }
+
+    @Test
+    public void testPlanVeinMatchesEllipsoidLoop() {
+        for(int blocksPerVein : new int[]{1, 4, 8, 17, 33}) {
+            WorldGenMinableExtended generator = new WorldGenMinableExtended(Blocks.DIAMOND_ORE.getDefaultState(),
+                    blocksPerVein, 1, 0, 256, Blocks.STONE);
+            for(long seed = 0; seed < 50; seed++) {
+                Random originRandom = new Random(seed);
+                int x = originRandom.nextInt(16);
+                int y = originRandom.nextInt(256);
+                int z = originRandom.nextInt(16);
+
+                Random random = new Random(seed);
+                TIntArrayList positions = new TIntArrayList();
+                generator.planVein(random, x, y, z, positions);
+
+                Random referenceRandom = new Random(seed);
+                TIntArrayList referencePositions = new TIntArrayList();
+                planVeinReference(blocksPerVein, referenceRandom, x, y, z, referencePositions);
+
+                String message = "Vein of " + blocksPerVein + " at " + x + ":" + y + ":" + z + " with seed " + seed;
+                assertThat(message, positions, is(referencePositions));
+                assertThat(message + " consumes the same random values", random.nextLong(), is(referenceRandom.nextLong()));
+            }
+        }
+    }
+
+    @Test
+    public void testPackPosition() {
+        int position = WorldGenMinableExtended.packPosition(15, 255, 3);
+        assertThat(position & 15, is(15));
+        assertThat((position >> 4) & 15, is(3));
+        assertThat(position >> 8, is(255));
+    }
+
+    /**
+     * The original vein loop, which checks every position of the bounding box of each step,
+     * and only keeps positions inside the chunk (excluding the first column) and the build height.
+     */
+    protected static void planVeinReference(int blocksPerVein, Random rand, int x, int y, int z, TIntArrayList positions) {
+        float f = rand.nextFloat() * (float)Math.PI;
+        double d0 = (double)((float)(x + 8) + MathHelper.sin(f) * (float)blocksPerVein / 8.0F);
+        double d1 = (double)((float)(x + 8) - MathHelper.sin(f) * (float)blocksPerVein / 8.0F);
+        double d2 = (double)((float)(z + 8) + MathHelper.cos(f) * (float)blocksPerVein / 8.0F);
+        double d3 = (double)((float)(z + 8) - MathHelper.cos(f) * (float)blocksPerVein / 8.0F);
+        double d4 = (double)(y + rand.nextInt(3) - 2);
+        double d5 = (double)(y + rand.nextInt(3) - 2);
+
+        for (int l = 0; l <= blocksPerVein; ++l) {
+            double d6 = d0 + (d1 - d0) * (double)l / (double)blocksPerVein;
+            double d7 = d4 + (d5 - d4) * (double)l / (double)blocksPerVein;
+            double d8 = d2 + (d3 - d2) * (double)l / (double)blocksPerVein;
+            double d9 = rand.nextDouble() * (double)blocksPerVein / 16.0D;
+            double d10 = (double)(MathHelper.sin((float) l * (float) Math.PI / (float) blocksPerVein) + 1.0F) * d9 + 1.0D;
+            double d11 = (double)(MathHelper.sin((float) l * (float) Math.PI / (float) blocksPerVein) + 1.0F) * d9 + 1.0D;
+            int i1 = MathHelper.floor(d6 - d10 / 2.0D);
+            int j1 = MathHelper.floor(d7 - d11 / 2.0D);
+            int k1 = MathHelper.floor(d8 - d10 / 2.0D);
+            int l1 = MathHelper.floor(d6 + d10 / 2.0D);
+            int i2 = MathHelper.floor(d7 + d11 / 2.0D);
+            int j2 = MathHelper.floor(d8 + d10 / 2.0D);
+
+            for (int cx = i1; cx <= l1; ++cx) {
+                double d12 = ((double)cx + 0.5D - d6) / (d10 / 2.0D);
+
+                if (d12 * d12 < 1.0D) {
+                    for (int cy = j1; cy <= i2; ++cy) {
+                        double d13 = ((double)cy + 0.5D - d7) / (d11 / 2.0D);
+
+                        if (d12 * d12 + d13 * d13 < 1.0D) {
+                            for (int cz = k1; cz <= j2; ++cz) {
+                                if(cx > 0 && cx < WorldHelpers.CHUNK_SIZE
+                                        && cz > 0 && cz < WorldHelpers.CHUNK_SIZE
+                                        && cy >= 0 && cy < 256) {
+                                    positions.add(WorldGenMinableExtended.packPosition(cx, cy, cz));
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+}
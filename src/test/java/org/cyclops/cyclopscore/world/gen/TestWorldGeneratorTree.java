@@ -0,0 +1,250 @@
+package org.cyclops.cyclopscore.world.gen;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockLeaves;
+import net.minecraft.block.BlockLog;
+import net.minecraft.block.BlockSapling;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Blocks;
+import net.minecraft.init.Bootstrap;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import org.cyclops.cyclopscore.helper.WorldDummy;
+import org.cyclops.cyclopscore.helper.WorldHelpers;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit tests for {@link WorldGeneratorTree}.
+ * @author rubensworks
+ */
+public class TestWorldGeneratorTree {
+
+    static {
+        Bootstrap.register();
+    }
+
+    private static final int GROUND_Y = 63;
+    private static final IBlockState[] OBSTACLES = new IBlockState[]{
+            Blocks.STONE.getDefaultState(),
+            Blocks.GLASS.getDefaultState(),
+            Blocks.LEAVES.getDefaultState(),
+            Blocks.TALLGRASS.getDefaultState(),
+            Blocks.LOG.getDefaultState(),
+    };
+
+    private static final WorldGeneratorTree GENERATOR = new WorldGeneratorTree(false) {
+        @Override
+        protected int baseHeight() {
+            return 4;
+        }
+
+        @Override
+        protected int baseHeightRandomRange() {
+            return 3;
+        }
+
+        @Override
+        public BlockLeaves getLeaves() {
+            return (BlockLeaves) Blocks.LEAVES;
+        }
+
+        @Override
+        public BlockLog getLogs() {
+            return (BlockLog) Blocks.LOG;
+        }
+
+        @Override
+        public BlockSapling getSapling() {
+            return (BlockSapling) Blocks.SAPLING;
+        }
+    };
+
+    @Test
+    public void testGrowTree() {
+        WorldDummy world = createWorld(0, 0);
+        BlockPos pos = new BlockPos(8, GROUND_Y + 1, 8);
+        int treeHeight = new Random(1).nextInt(3) + 4;
+        assertThat(GENERATOR.growTree(world, new Random(1), pos), is(true));
+        for(int y = 0; y < treeHeight; y++) {
+            assertThat("Log at " + y, world.getBlockState(pos.up(y)).getBlock(), is((Block) Blocks.LOG));
+        }
+        assertThat(world.getBlockState(pos.up(treeHeight)).getBlock(), is((Block) Blocks.LEAVES));
+        assertThat(world.getBlockState(pos.down()).getBlock(), is((Block) Blocks.GRASS));
+    }
+
+    @Test
+    public void testGrowTreeObstructed() {
+        WorldDummy world = createWorld(0, 0);
+        BlockPos pos = new BlockPos(8, GROUND_Y + 1, 8);
+        world.setBlockState(pos.add(1, 2, 1), Blocks.STONE.getDefaultState());
+        assertThat(GENERATOR.growTree(world, new Random(1), pos), is(false));
+        assertThat(world.getBlockState(pos).getBlock(), is((Block) Blocks.AIR));
+    }
+
+    @Test
+    public void testGrowTreeMatchesReference() {
+        for(int obstacles : new int[]{0, 10, 80}) {
+            for(long seed = 0; seed < 30; seed++) {
+                WorldDummy world = createWorld(seed, obstacles);
+                WorldDummy worldReference = createWorld(seed, obstacles);
+                Random posRandom = new Random(seed);
+                BlockPos pos = new BlockPos(posRandom.nextInt(48) - 16, GROUND_Y + 1, posRandom.nextInt(48) - 16);
+
+                Random random = new Random(seed);
+                Random randomReference = new Random(seed);
+                String message = "Tree at " + pos + " with seed " + seed + " and " + obstacles + " obstacles";
+                assertThat(message, GENERATOR.growTree(world, random, pos),
+                        is(growTreeReference(GENERATOR, worldReference, randomReference, pos)));
+                assertThat(message + " consumes the same random values", random.nextLong(), is(randomReference.nextLong()));
+                for(BlockPos loopPos : BlockPos.getAllInBoxMutable(pos.add(-4, -2, -4), pos.add(4, 12, 4))) {
+                    assertThat(message + " at " + loopPos, world.getBlockState(loopPos), is(worldReference.getBlockState(loopPos)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testGenerate() {
+        WorldDummy world = createWorld(0, 0);
+        assertThat(GENERATOR.generate(world, new Random(0), new BlockPos(8, 10, 8)), is(true));
+        assertThat(world.getBlockState(new BlockPos(8, GROUND_Y + 1, 8)).getBlock(), is((Block) Blocks.LOG));
+        assertThat(WorldHelpers.findInArea(world, new BlockPos(-96, GROUND_Y + 2, -96), new BlockPos(111, 255, 111),
+                (blockState, pos) -> blockState.getBlock() == Blocks.LOG && world.getBlockState(pos.down()).getBlock() == Blocks.GRASS),
+                nullValue());
+    }
+
+    /**
+     * Create a world with a flat grass surface and random obstacles above it.
+     * @param seed The world seed.
+     * @param obstacles The number of obstacles per chunk.
+     * @return The world.
+     */
+    protected static WorldDummy createWorld(long seed, int obstacles) {
+        return new WorldDummy(seed, (world, chunk, random) -> {
+            int baseX = chunk.x << 4;
+            int baseZ = chunk.z << 4;
+            for(int x = 0; x < 16; x++) {
+                for(int z = 0; z < 16; z++) {
+                    for(int y = 0; y < GROUND_Y; y++) {
+                        world.setBlockState(new BlockPos(baseX + x, y, baseZ + z), Blocks.DIRT.getDefaultState());
+                    }
+                    world.setBlockState(new BlockPos(baseX + x, GROUND_Y, baseZ + z), Blocks.GRASS.getDefaultState());
+                }
+            }
+            for(int i = 0; i < obstacles; i++) {
+                BlockPos pos = new BlockPos(baseX + random.nextInt(16), GROUND_Y + 1 + random.nextInt(16), baseZ + random.nextInt(16));
+                world.setBlockState(pos, OBSTACLES[random.nextInt(OBSTACLES.length)]);
+            }
+        });
+    }
+
+    /**
+     * The original tree growing, which checks every block of the tree volume.
+     */
+    protected static boolean growTreeReference(WorldGeneratorTree generator, World world, Random rand, BlockPos blockPos) {
+        int treeHeight = rand.nextInt(generator.baseHeightRandomRange()) + generator.baseHeight();
+        int worldHeight = world.getHeight();
+        Block block;
+
+        if(blockPos.getY() >= 1 && blockPos.getY() + treeHeight + 1 <= worldHeight) {
+            int xOffset;
+            int yOffset;
+            int zOffset;
+
+            BlockPos basePos = blockPos.add(0, -1, 0);
+            IBlockState blockState = world.getBlockState(basePos);
+            block = blockState.getBlock();
+            int x = blockPos.getX();
+            int y = blockPos.getY();
+            int z = blockPos.getZ();
+
+            if((block != null && block.canSustainPlant(blockState, world, basePos, EnumFacing.UP,
+                    generator.getSapling())) && y < worldHeight - treeHeight - 1) {
+                for(yOffset = y; yOffset <= y + 1 + treeHeight; ++yOffset) {
+                    byte radius = 1;
+
+                    if(yOffset == y) {
+                        radius = 0;
+                    }
+
+                    if(yOffset >= y + 1 + treeHeight - 3) {
+                        radius = 3;
+                    }
+
+                    if(yOffset >= 0 & yOffset < worldHeight) {
+                        for(xOffset = x - radius; xOffset <= x + radius; ++xOffset) {
+                            for(zOffset = z - radius; zOffset <= z + radius; ++zOffset) {
+                                BlockPos loopPos = new BlockPos(xOffset, yOffset, zOffset);
+                                IBlockState loopBlockState = world.getBlockState(loopPos);
+                                block = loopBlockState.getBlock();
+
+                                if(block != null && !(block.isLeaves(loopBlockState, world, loopPos) ||
+                                        block == Blocks.AIR ||
+                                        block.canBeReplacedByLeaves(loopBlockState, world, loopPos))) {
+                                    return false;
+                                }
+                            }
+                        }
+                    } else {
+                        return false;
+                    }
+                }
+
+                if (block != null) {
+                    block.onPlantGrow(blockState, world, basePos, blockPos);
+
+                    for(yOffset = y - 3 + treeHeight; yOffset <= y + treeHeight; ++yOffset) {
+                        int var12 = yOffset - (y + treeHeight);
+                        int center = 1 - var12 / 2;
+
+                        for(xOffset = x - center; xOffset <= x + center; ++xOffset) {
+                            int xPos = xOffset - x;
+                            int t = xPos >> 31;
+                            xPos = (xPos + t) ^ t;
+
+                            for(zOffset = z - center; zOffset <= z + center; ++zOffset) {
+                                int zPos = zOffset - z;
+                                zPos = (zPos + (t = zPos >> 31)) ^ t;
+                                BlockPos loopPos = new BlockPos(xOffset, yOffset, zOffset);
+                                IBlockState loopBlockState = world.getBlockState(loopPos);
+
+                                block = loopBlockState.getBlock();
+
+                                if(((xPos != center | zPos != center) ||
+                                        rand.nextInt(2) != 0 && var12 != 0) &&
+                                        (block == null || block.isLeaves(loopBlockState, world, loopPos) ||
+                                        block == Blocks.AIR ||
+                                        block.canBeReplacedByLeaves(loopBlockState, world, loopPos))) {
+                                    world.setBlockState(loopPos, generator.getLeaves().getDefaultState(), 2);
+                                }
+                            }
+                        }
+                    }
+
+                    for(yOffset = 0; yOffset < treeHeight; ++yOffset) {
+                        BlockPos loopPos = blockPos.add(0, yOffset, 0);
+                        IBlockState loopBlockState = world.getBlockState(loopPos);
+                        block = loopBlockState.getBlock();
+
+                        if(block == null || block == Blocks.AIR  ||
+                                block.isLeaves(loopBlockState, world, loopPos) ||
+                                block.isReplaceable(world, loopPos)) {
+                            world.setBlockState(loopPos,
+                                    generator.getLogs().getDefaultState().withProperty(BlockLog.LOG_AXIS, BlockLog.EnumAxis.Y), 2);
+                        }
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+}